@@ -15,10 +15,19 @@ import lombok.extern.slf4j.Slf4j;
 public class RetryAnalyzer implements IRetryAnalyzer {
 
 	private int retryCount = 0;
-	private static final int MAX_RETRY_COUNT = ConfigManager.getInt("retry.count", 0);
+	private static volatile int maxRetryCount = ConfigManager.getInt("retry.count", 0);
 
 	private static final Set<ITestResult> RETRIED_TESTS = new HashSet<>();
 
+	static {
+		ConfigManager.subscribe(change -> {
+			if (change.contains("retry.count")) {
+				maxRetryCount = ConfigManager.getInt("retry.count", 0);
+				log.info("retry count set to {}", maxRetryCount);
+			}
+		});
+	}
+
 	public static Set<ITestResult> getRetriedtests() {
 		return RETRIED_TESTS;
 	}
@@ -32,7 +41,7 @@ public class RetryAnalyzer implements IRetryAnalyzer {
 	@Override
 	public boolean retry(ITestResult result) {
 
-		if (retryCount < MAX_RETRY_COUNT) {
+		if (retryCount < maxRetryCount) {
 			log.info("retrying test {} with status {} ::: parameters {} for {} time(s)", result.getName(),
 					getResultStatusName(result.getStatus()),
 					(result.getParameters() == null || result.getParameters().length == 0 ? ""
@@ -0,0 +1,175 @@
+package com.example.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+
+import io.qameta.allure.Allure;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Writes test artifacts (screenshots, page sources, videos) to disk and to the
+ * Allure results off the test thread. The Allure attachment is registered on
+ * the calling thread, so it lands on the right test or step, while the bytes
+ * are written once from memory by a small pool of writers. At most
+ * 'artifacts.queue.size' artifacts wait for a writer; beyond that the calling
+ * thread writes the artifact itself, which throttles producers when the disk
+ * is slow instead of buffering without limit.
+ */
+@Slf4j
+public final class ArtifactWriter {
+
+	private static final int THREADS = Math.max(1, ConfigManager.getInt("artifacts.threads", 2));
+	private static final int QUEUE_SIZE = Math.max(1, ConfigManager.getInt("artifacts.queue.size", 16));
+
+	private static final ThreadPoolExecutor EXECUTOR = newExecutor();
+	private static final Queue<CompletableFuture<Void>> PENDING = new ConcurrentLinkedQueue<>();
+
+	private ArtifactWriter() {
+	}
+
+	private static ThreadPoolExecutor newExecutor() {
+		AtomicInteger count = new AtomicInteger();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(QUEUE_SIZE), runnable -> {
+					Thread thread = new Thread(runnable, "artifact-writer-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Write the given artifact to the given file and attach it to the current
+	 * Allure test or step
+	 *
+	 * @param data      byte[]
+	 * @param file      {@link File} - <code>null</code> to only attach it
+	 * @param type      {@link String} - mime type
+	 * @param extension {@link String} - with the leading dot
+	 * @return {@link CompletableFuture}&lt;{@link Void}&gt; - completes once
+	 *         written
+	 */
+	public static CompletableFuture<Void> write(@NonNull byte[] data, final File file, @NonNull String type,
+			@NonNull String extension) {
+		return write(CompletableFuture.completedFuture(data), file, type, extension);
+	}
+
+	/**
+	 * Write the given artifact, once it is produced (e.g. encoded), to the given
+	 * file and attach it to the current Allure test or step
+	 *
+	 * @param data      {@link CompletableFuture}&lt;byte[]&gt;
+	 * @param file      {@link File} - <code>null</code> to only attach it
+	 * @param type      {@link String} - mime type
+	 * @param extension {@link String} - with the leading dot
+	 * @return {@link CompletableFuture}&lt;{@link Void}&gt; - completes once
+	 *         written
+	 */
+	public static CompletableFuture<Void> write(@NonNull CompletableFuture<byte[]> data, final File file,
+			@NonNull String type, @NonNull String extension) {
+		String name = file == null ? "attachment" + extension : file.getName();
+		String source = prepareAttachment(name, type, extension);
+		CompletableFuture<Void> future = data.thenAcceptAsync(bytes -> {
+			try {
+				if (file != null) {
+					FileUtils.writeByteArrayToFile(file, bytes);
+				}
+				if (source != null) {
+					Allure.getLifecycle().writeAttachment(source, new ByteArrayInputStream(bytes));
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, EXECUTOR).whenComplete((result, e) -> {
+			if (e != null) {
+				log.error(String.format("unable to write artifact '%s'", name), e);
+			}
+		});
+		PENDING.removeIf(CompletableFuture::isDone);
+		PENDING.add(future);
+		return future;
+	}
+
+	/**
+	 * Attach the given file, already written to disk, to the current Allure test
+	 * or step. The file is streamed, not loaded in memory.
+	 *
+	 * @param file      {@link File}
+	 * @param type      {@link String} - mime type
+	 * @param extension {@link String} - with the leading dot
+	 * @return {@link CompletableFuture}&lt;{@link Void}&gt; - completes once
+	 *         attached
+	 */
+	public static CompletableFuture<Void> attach(@NonNull File file, @NonNull String type,
+			@NonNull String extension) {
+		String source = prepareAttachment(file.getName(), type, extension);
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		if (source == null) {
+			future.complete(null);
+			return future;
+		}
+		PENDING.removeIf(CompletableFuture::isDone);
+		PENDING.add(future);
+		EXECUTOR.execute(() -> {
+			try (InputStream in = Files.newInputStream(file.toPath())) {
+				Allure.getLifecycle().writeAttachment(source, in);
+				future.complete(null);
+			} catch (IOException | RuntimeException e) {
+				log.error(String.format("unable to attach artifact '%s'", file), e);
+				future.completeExceptionally(e);
+			}
+		});
+		return future;
+	}
+
+	private static String prepareAttachment(String name, String type, String extension) {
+		try {
+			return Allure.getLifecycle().prepareAttachment(name, type, extension);
+		} catch (RuntimeException e) {
+			log.warn("unable to attach '{}' to the allure report => {}", name, e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Wait for every submitted artifact to be written
+	 *
+	 * @param timeout {@link Long}
+	 * @param unit    {@link TimeUnit}
+	 * @return {@link Boolean} - whether all artifacts were written in time
+	 */
+	public static boolean flush(long timeout, @NonNull TimeUnit unit) {
+		long start = System.currentTimeMillis();
+		CompletableFuture<?>[] pending = PENDING.toArray(new CompletableFuture<?>[0]);
+		try {
+			CompletableFuture.allOf(pending).exceptionally(e -> null).get(timeout, unit);
+			PENDING.removeIf(CompletableFuture::isDone);
+			log.debug("flushed {} artifacts in {} ms", pending.length, System.currentTimeMillis() - start);
+			return true;
+		} catch (TimeoutException e) {
+			log.error("{} artifacts were not written within {} {}", PENDING.stream().filter(f -> !f.isDone()).count(),
+					timeout, unit.toString().toLowerCase());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			log.error("error occurred while flushing artifacts", e);
+		}
+		return false;
+	}
+}
@@ -4,26 +4,18 @@ import static com.example.utils.ConfigManager.getBoolean;
 import static com.example.utils.ConfigManager.getString;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.time.Duration;
 import java.util.Base64;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.List;
-import java.util.Optional;
 import java.util.Set;
-import java.util.Vector;
 import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.io.FileUtils;
-import org.openqa.selenium.OutputType;
-import org.openqa.selenium.TakesScreenshot;
 import org.openqa.selenium.WebDriver;
 import org.testng.ITestContext;
 import org.testng.ITestListener;
@@ -41,18 +33,36 @@ import org.testng.xml.XmlTest;
 
 import com.example.Channel;
 import com.example.listener.RetryAnalyzer;
+import com.example.utils.device.Device;
+import com.example.utils.device.DeviceCriteria;
+import com.example.utils.device.DeviceEvent;
+import com.example.utils.device.DevicePool;
+import com.example.utils.device.DevicePreparation;
+import com.example.utils.device.DeviceRegistry;
 import com.example.utils.webdriver.ADBUtilities;
+import com.example.utils.webdriver.AdaptiveWait;
+import com.example.utils.webdriver.AdbShellSession;
 import com.example.utils.webdriver.AppiumServiceFactory;
+import com.example.utils.webdriver.DriverSessionPool;
+import com.example.utils.webdriver.ElementLookupMetrics;
 import com.example.utils.webdriver.IOSUtilities;
+import com.example.utils.webdriver.ScreenStability;
+import com.example.utils.webdriver.ScreenshotProvider;
+import com.example.utils.webdriver.ScreenshotProvider.Format;
+import com.example.utils.webdriver.ScreenshotProvider.Screenshot;
+import com.example.utils.webdriver.SegmentedScreenRecorder;
 import com.example.utils.webdriver.WebDriverFactory;
 
 import io.appium.java_client.AppiumDriver;
 import io.appium.java_client.android.AndroidDriver;
 import io.appium.java_client.android.AndroidStartScreenRecordingOptions;
+import io.appium.java_client.android.AndroidStopScreenRecordingOptions;
 import io.appium.java_client.ios.IOSStartScreenRecordingOptions;
 import io.appium.java_client.ios.IOSStartScreenRecordingOptions.VideoQuality;
+import io.appium.java_client.ios.IOSStopScreenRecordingOptions;
 import io.appium.java_client.screenrecording.CanRecordScreen;
-import io.qameta.allure.Allure;
+import io.appium.java_client.screenrecording.ScreenRecordingUploadOptions;
+import io.appium.java_client.screenrecording.ScreenRecordingUploadOptions.RequestMethod;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -68,10 +78,14 @@ public class BaseTest implements ITestListener {
 	private static final String VIDEOS_DIRECTORY = getString("ui.videos.dir");
 	private static final DateFormat DATE_FORMAT = new SimpleDateFormat("dd-MM-yyyy-HH-mm-SS");
 
-	private static final List<String> DEVICES = new Vector<>();
+	private static final DevicePool DEVICES = new DevicePool();
+	private static final long DEVICE_LEASE_TIMEOUT = ConfigManager.getLong("device.lease.timeout", 300);
 
 	@BeforeSuite(alwaysRun = true)
 	public final void onBeforeSuite(ITestContext context) {
+		if (getBoolean("config.reload.enabled")) {
+			ConfigManager.startWatching();
+		}
 		int connectedDevices = getConnectedDevicesCount();
 		if (connectedDevices == 0) {
 			throw new RuntimeException(
@@ -79,16 +93,64 @@ public class BaseTest implements ITestListener {
 		} else {
 			log.info("connected {} phones => {}", getDeviceType(), DEVICES);
 		}
+		if (getBoolean("device.prepare.enabled")) {
+			connectedDevices = prepareDevices();
+		}
 		setThreadCount(context, connectedDevices);
+		AppiumServiceFactory.prestartAppiumServices(DEVICES.getDevices());
+		if (getBoolean("device.registry.enabled")) {
+			DeviceRegistry.subscribe(this::onDeviceEvent);
+			DeviceRegistry.start();
+		}
+	}
+
+	private int prepareDevices() {
+		DevicePreparation.prepare(DEVICES.getDevices()).stream().filter(report -> !report.isPrepared())
+				.forEach(report -> {
+					DEVICES.retire(report.getDeviceId());
+					log.warn("device '{}' ::: excluded from the run, preparation failed", report.getDeviceId());
+				});
+		if (DEVICES.isEmpty()) {
+			throw new RuntimeException(
+					String.format("none of the connected %s phones could be prepared for the run", getDeviceType()));
+		}
+		return DEVICES.size();
+	}
+
+	private void onDeviceEvent(DeviceEvent event) {
+		if ((event.isAndroid() && CHANNEL == Channel.NATIVE_IOS)
+				|| (!event.isAndroid() && CHANNEL == Channel.NATIVE_ANDROID)) {
+			return;
+		}
+		String deviceId = event.getDeviceId();
+		if (event.isOnline()) {
+			if (DEVICES.contains(deviceId)) {
+				return;
+			}
+			Device device = event.isAndroid() ? Device.android(deviceId) : Device.ios(deviceId);
+			// a device still leased by a test is back, preparing it would disturb the session
+			if (getBoolean("device.prepare.enabled") && !DEVICES.isLeased(deviceId)
+					&& !DevicePreparation.prepare(Collections.singletonList(device)).get(0).isPrepared()) {
+				log.warn("device '{}' ::: not added to the pool, preparation failed", deviceId);
+			} else if (DEVICES.add(device)) {
+				log.info("device '{}' ::: added to the pool of available devices", deviceId);
+			}
+		} else if (DEVICES.retire(deviceId)) {
+			log.warn("device '{}' ::: retired from the pool of available devices", deviceId);
+			if (!DEVICES.isLeased(deviceId)) {
+				DriverSessionPool.discard(deviceId);
+				AppiumServiceFactory.shutdownAppiumService(deviceId);
+			}
+		}
 	}
 
 	private int getConnectedDevicesCount() {
 		if (DEVICES.isEmpty()) {
 			if (CHANNEL == Channel.NATIVE_ANDROID || CHANNEL == Channel.MOBILE_WEB) {
-				DEVICES.addAll(ADBUtilities.getConnectedDevices().keySet());
+				ADBUtilities.getConnectedDevices().keySet().forEach(id -> DEVICES.add(Device.android(id)));
 			}
 			if (CHANNEL == Channel.NATIVE_IOS || CHANNEL == Channel.MOBILE_WEB) {
-				DEVICES.addAll(IOSUtilities.getConnectedDevices().keySet());
+				IOSUtilities.getConnectedDevices().keySet().forEach(id -> DEVICES.add(Device.ios(id)));
 			}
 		}
 		return DEVICES.size();
@@ -105,6 +167,18 @@ public class BaseTest implements ITestListener {
 		DRIVER.remove();
 		CURRENT_RUNNING_DEVICE.remove();
 		DEVICES.clear();
+		ConfigManager.stopWatching();
+		DeviceRegistry.stop();
+		DriverSessionPool.quitAll();
+		AppiumServiceFactory.shutdownAllAppiumServices();
+		DevicePreparation.restore();
+		AdbShellSession.closeAll();
+		SegmentedScreenRecorder.stopAll();
+		ScreenRecordingReceiver.stop();
+		ArtifactWriter.flush(ConfigManager.getLong("artifacts.flush.timeout", 120), TimeUnit.SECONDS);
+		AdaptiveWait.save();
+		log.info(ElementLookupMetrics.summary());
+		log.info(ScreenStability.summary());
 
 		if (ConfigManager.getInt("retry.count", 0) > 0) {
 			removeDuplicateTestCases(context);
@@ -160,9 +234,7 @@ public class BaseTest implements ITestListener {
 	public final void beforeClass(ITestContext testContext, XmlTest xmlTest) {
 		ParallelMode mode = getParallelMode(testContext, xmlTest);
 		if (mode == null || mode == ParallelMode.NONE || mode == ParallelMode.CLASSES) {
-			synchronized (BaseTest.class) {
-				createWebDriver();
-			}
+			createWebDriver();
 		}
 	}
 
@@ -175,6 +247,10 @@ public class BaseTest implements ITestListener {
 			return;
 		}
 		if (DRIVER.get() != null && getBoolean("ui.record_video")) {
+			if (DRIVER.get() instanceof AndroidDriver && SegmentedScreenRecorder.isEnabled()
+					&& SegmentedScreenRecorder.start(CURRENT_RUNNING_DEVICE.get())) {
+				return;
+			}
 			CanRecordScreen recorder = (CanRecordScreen) getDriver();
 			if (DRIVER.get() instanceof AndroidDriver) {
 				recorder.startRecordingScreen(
@@ -200,26 +276,57 @@ public class BaseTest implements ITestListener {
 			log.warn("screen recording is only for emulators/simulators");
 			return;
 		}
+		if (SegmentedScreenRecorder.isRecording(CURRENT_RUNNING_DEVICE.get())) {
+			SegmentedScreenRecorder.stop(CURRENT_RUNNING_DEVICE.get(), save ? file : null).forEach(video -> {
+				ArtifactWriter.attach(video, "video/mp4", ".mp4");
+				log.info("video of execution saved to => {}", video.getAbsolutePath());
+			});
+			return;
+		}
 		if (DRIVER.get() != null && getBoolean("ui.record_video")) {
 			CanRecordScreen recorder = (CanRecordScreen) getDriver();
+			if (ScreenRecordingReceiver.isEnabled() && uploadVideoRecording(recorder, file, save)) {
+				return;
+			}
 			if (!save) {
 				recorder.stopRecordingScreen();
 			} else {
 				String data = recorder.stopRecordingScreen();
-				try {
-					if (file.getParentFile() != null && !file.getParentFile().exists()) {
-						file.getParentFile().mkdirs();
-					}
-					FileUtils.writeByteArrayToFile(file, Base64.getDecoder().decode(data));
-					try (InputStream stream = new FileInputStream(file)) {
-						Allure.addAttachment(file.getName(), "video/mp4", stream, ".mp4");
-					}
-					log.info("video of execution saved to => {}", file.getAbsolutePath());
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
+				ArtifactWriter.write(Base64.getDecoder().decode(data), file, "video/mp4", ".mp4");
+				log.info("video of execution saved to => {}", file.getAbsolutePath());
+			}
+		}
+	}
+
+	/**
+	 * Let Appium upload the recording to the local {@link ScreenRecordingReceiver}
+	 * which streams it to disk, instead of returning it as one Base64 string
+	 */
+	private boolean uploadVideoRecording(CanRecordScreen recorder, File file, boolean save) {
+		String url = ScreenRecordingReceiver.register(save ? file : null);
+		if (url == null) {
+			return false;
+		}
+		ScreenRecordingUploadOptions upload = ScreenRecordingUploadOptions.uploadOptions().withRemotePath(url)
+				.withHttpMethod(RequestMethod.PUT);
+		try {
+			if (DRIVER.get() instanceof AndroidDriver) {
+				recorder.stopRecordingScreen(
+						AndroidStopScreenRecordingOptions.stopScreenRecordingOptions().withUploadOptions(upload));
+			} else {
+				recorder.stopRecordingScreen(
+						IOSStopScreenRecordingOptions.stopScreenRecordingOptions().withUploadOptions(upload));
 			}
+		} catch (RuntimeException e) {
+			ScreenRecordingReceiver.unregister(url);
+			log.error("unable to upload the video of execution => {}", e.getMessage());
+			return true;
 		}
+		if (save) {
+			ArtifactWriter.attach(file, "video/mp4", ".mp4");
+			log.info("video of execution saved to => {}", file.getAbsolutePath());
+		}
+		return true;
 	}
 
 	private ParallelMode getParallelMode(ITestContext testContext, XmlTest xmlTest) {
@@ -234,9 +341,7 @@ public class BaseTest implements ITestListener {
 	public final void afterClass(ITestContext testContext, XmlTest xmlTest) {
 		ParallelMode mode = getParallelMode(testContext, xmlTest);
 		if (mode == null || mode == ParallelMode.NONE || mode == ParallelMode.CLASSES) {
-			synchronized (BaseTest.class) {
-				removeWebDriver();
-			}
+			removeWebDriver();
 		}
 	}
 
@@ -244,9 +349,11 @@ public class BaseTest implements ITestListener {
 		String device = CURRENT_RUNNING_DEVICE.get();
 		if (device != null) {
 			if (DRIVER.get() instanceof AppiumDriver) {
-				((AppiumDriver<?>) DRIVER.get()).closeApp();
-				AppiumServiceFactory.stopLocalAppiumService(device);
-				DEVICES.add(device);
+				if (!DriverSessionPool.isEnabled()) {
+					((AppiumDriver<?>) DRIVER.get()).closeApp();
+					AppiumServiceFactory.stopLocalAppiumService(device);
+				}
+				DEVICES.release(device);
 				DRIVER.remove();
 				CURRENT_RUNNING_DEVICE.remove();
 			}
@@ -259,9 +366,7 @@ public class BaseTest implements ITestListener {
 	public final void beforeMethod(ITestContext testContext, XmlTest xmlTest) {
 		ParallelMode mode = testContext.getCurrentXmlTest().getParallel();
 		if (mode == ParallelMode.METHODS) {
-			synchronized (BaseTest.class) {
-				createWebDriver();
-			}
+			createWebDriver();
 		}
 		startVideoRecording();
 	}
@@ -270,70 +375,49 @@ public class BaseTest implements ITestListener {
 	public final void afterMethod(ITestContext testContext, XmlTest xmlTest) {
 		ParallelMode mode = testContext.getCurrentXmlTest().getParallel();
 		if (mode == ParallelMode.METHODS) {
-			synchronized (BaseTest.class) {
-				removeWebDriver();
-			}
+			removeWebDriver();
 		}
 	}
 
 	private void createWebDriver() {
 
-		String deviceId = null;
 		String mobileWebOS = getString("ui.mobile_web.os");
 		if (mobileWebOS != null) {
 			mobileWebOS = mobileWebOS.trim().toLowerCase();
 		}
 		Boolean isAndroid = null;
-
 		if (CHANNEL != Channel.MOBILE_WEB) {
-			if (DEVICES.isEmpty()) {
-				throw new RuntimeException(
-						String.format("please connect %s phones to the machine and re-run the tests",
-								CHANNEL.toString()));
-			} else {
-				isAndroid = CHANNEL == Channel.NATIVE_ANDROID;
-				deviceId = DEVICES.remove(0);
-			}
-		} else {
-			if (Channel.NATIVE_ANDROID.toString().equals(mobileWebOS)) {
-				Collection<String> keys = ADBUtilities.getConnectedDevices().keySet();
-				Optional<String> optional = DEVICES.stream().filter(keys::contains).findAny();
-				if (optional.isPresent()) {
-					deviceId = optional.get();
-					isAndroid = true;
-				} else {
-					throw new RuntimeException("please connect android phones to the machine and re-run the tests");
-				}
-			} else if (Channel.NATIVE_IOS.toString().equals(mobileWebOS)) {
-				Collection<String> keys = IOSUtilities.getConnectedDevices().keySet();
-				Optional<String> optional = DEVICES.stream().filter(keys::contains).findAny();
-				if (optional.isPresent()) {
-					deviceId = optional.get();
-					isAndroid = false;
-				} else {
-					throw new RuntimeException("please connect ios phones to the machine and re-run the tests");
-				}
-			} else {
-				if (DEVICES.isEmpty()) {
-					throw new RuntimeException(
-							"please connect android or ios phones to the machine and re-run the tests");
-				} else {
-					deviceId = DEVICES.remove(0);
-					isAndroid = ADBUtilities.getConnectedDevices().containsKey(deviceId);
-				}
-			}
+			isAndroid = CHANNEL == Channel.NATIVE_ANDROID;
+		} else if (Channel.NATIVE_ANDROID.toString().equals(mobileWebOS)) {
+			isAndroid = true;
+		} else if (Channel.NATIVE_IOS.toString().equals(mobileWebOS)) {
+			isAndroid = false;
 		}
 
-		if (deviceId == null) {
+		if (DEVICES.isEmpty()) {
 			throw new RuntimeException(String.format("please connect %s phones to the machine and re-run the tests",
-					CHANNEL == Channel.NATIVE_ANDROID ? ANDROID
-							: (CHANNEL == Channel.NATIVE_IOS ? IOS : "android or ios")));
+					isAndroid == null ? "android or ios" : (isAndroid ? ANDROID : IOS)));
 		}
+		Device device = leaseDevice(isAndroid);
+		if (device == null) {
+			throw new RuntimeException(String.format("please connect %s phones to the machine and re-run the tests",
+					isAndroid == null ? "android or ios" : (isAndroid ? ANDROID : IOS)));
+		}
+		String deviceId = device.getId();
+		isAndroid = device.isAndroid();
 		CURRENT_RUNNING_DEVICE.set(deviceId);
 
-		WebDriver driver = WebDriverFactory.create(CURRENT_RUNNING_DEVICE.get(), isAndroid,
-				CHANNEL == Channel.MOBILE_WEB);
+		WebDriver driver;
+		try {
+			driver = DriverSessionPool.isEnabled()
+					? DriverSessionPool.acquire(deviceId, isAndroid, CHANNEL == Channel.MOBILE_WEB)
+					: WebDriverFactory.create(deviceId, isAndroid, CHANNEL == Channel.MOBILE_WEB);
+		} catch (RuntimeException e) {
+			releaseDevice(deviceId);
+			throw e;
+		}
 		if (driver == null) {
+			releaseDevice(deviceId);
 			throw new RuntimeException(
 					String.format("error occurred while creating webdriver for %s device '%s'",
 							getDeviceType(isAndroid), deviceId));
@@ -344,6 +428,25 @@ public class BaseTest implements ITestListener {
 		DRIVER.set(driver);
 	}
 
+	private void releaseDevice(String deviceId) {
+		AppiumServiceFactory.stopLocalAppiumService(deviceId);
+		CURRENT_RUNNING_DEVICE.remove();
+		DEVICES.release(deviceId);
+	}
+
+	private Device leaseDevice(Boolean isAndroid) {
+		String emulator = getString("device.criteria.emulator");
+		DeviceCriteria criteria = DeviceCriteria.builder().android(isAndroid)
+				.model(getString("device.criteria.model")).osVersion(getString("device.criteria.os_version"))
+				.emulator(CommonUtilities.isBlank(emulator) ? null : Boolean.parseBoolean(emulator.trim())).build();
+		try {
+			return DEVICES.lease(criteria, DEVICE_LEASE_TIMEOUT, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
 	private String getDeviceType() {
 		return getDeviceType(CHANNEL == Channel.NATIVE_ANDROID);
 	}
@@ -395,29 +498,17 @@ public class BaseTest implements ITestListener {
 			return;
 		}
 
-		File file = getFile(prefix, "jpg", getString("ui.screenshots.dir"), result);
-		if (file.getParentFile() != null && !file.getParentFile().exists()) {
-			file.getParentFile().mkdirs();
-		}
-		byte[] out = ((TakesScreenshot) DRIVER.get()).getScreenshotAs(OutputType.BYTES);
-		try {
-			FileUtils.writeByteArrayToFile(file, out);
-			String type = CHANNEL == Channel.MOBILE_WEB ? "html" : "xml";
-			File source = new File(file.getAbsolutePath().replace("jpg", type));
-			FileUtils.write(source, DRIVER.get().getPageSource(), "utf-8");
-
-			log.info("screenshot saved to '{}'", file.getAbsolutePath());
-			log.info("page source saved to '{}'", source.getAbsolutePath());
-
-			try (InputStream stream = new FileInputStream(file)) {
-				Allure.addAttachment(file.getName(), "image/jpg", stream, ".jpg");
-			}
-			try (InputStream stream = new FileInputStream(source)) {
-				Allure.addAttachment(source.getName(), "text/" + type, stream, "." + type);
-			}
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		Screenshot screenshot = ScreenshotProvider.capture(DRIVER.get(), CURRENT_RUNNING_DEVICE.get());
+		Format format = screenshot.getFormat();
+		File file = getFile(prefix, format.getExtension().substring(1), getString("ui.screenshots.dir"), result);
+		ArtifactWriter.write(screenshot.getData(), file, format.getType(), format.getExtension());
+		log.info("screenshot saved to '{}'", file.getAbsolutePath());
+
+		String type = CHANNEL == Channel.MOBILE_WEB ? "html" : "xml";
+		File source = getFile(prefix, type, getString("ui.screenshots.dir"), result);
+		ArtifactWriter.write(DRIVER.get().getPageSource().getBytes(StandardCharsets.UTF_8), source, "text/" + type,
+				"." + type);
+		log.info("page source saved to '{}'", source.getAbsolutePath());
 	}
 
 	@Override
@@ -436,6 +527,18 @@ public class BaseTest implements ITestListener {
 		}
 	}
 
+	/**
+	 * Wait until the screen stops changing, at most the given time; prefer it
+	 * over {@link #sleep(long)} to wait for an animation
+	 *
+	 * @param maxSeconds {@link Long}
+	 * @return {@link Boolean} - <code>false</code> if the screen was still
+	 *         changing after the maximum wait
+	 */
+	protected final boolean waitForStableScreen(long maxSeconds) {
+		return ScreenStability.await(DRIVER.get(), CURRENT_RUNNING_DEVICE.get(), maxSeconds);
+	}
+
 	protected final void sleep(long seconds) {
 		try {
 			TimeUnit.SECONDS.sleep(seconds);
@@ -1,7 +1,20 @@
 package com.example.utils;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 import com.example.Platform;
@@ -13,9 +26,35 @@ public final class CommandLineExecutor {
 
 	private static final Platform PLATFORM = Platform.CURRENT_PLATFORM;
 
+	private static final long DEFAULT_TIMEOUT_IN_SECONDS = ConfigManager.getLong("command.timeout", 60);
+	private static final int MAX_CONCURRENT_PROCESSES = Math.max(1,
+			ConfigManager.getInt("command.max_concurrent_processes", 16));
+	// how often a drainer checks a silent process for output, in milliseconds
+	private static final long DRAIN_POLL_INTERVAL = 10;
+
+	/**
+	 * every running process holds one permit until it exited and both of its
+	 * streams are drained, so that its stream drainers are always guaranteed a
+	 * thread from {@link #STREAM_DRAINERS}
+	 */
+	private static final Semaphore PROCESS_PERMITS = new Semaphore(MAX_CONCURRENT_PROCESSES, true);
+	private static final ExecutorService STREAM_DRAINERS = createStreamDrainers();
+
 	private CommandLineExecutor() {
 	}
 
+	private static ExecutorService createStreamDrainers() {
+		AtomicInteger counter = new AtomicInteger();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(2 * MAX_CONCURRENT_PROCESSES,
+				2 * MAX_CONCURRENT_PROCESSES, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+					Thread thread = new Thread(runnable, "cmd-stream-drainer-" + counter.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
 	/**
 	 * Run system commands and get response back.
 	 *
@@ -58,45 +97,191 @@ public final class CommandLineExecutor {
 		if (isEmpty(command)) {
 			return null;
 		}
+		return execCommand(getShellCommand(command));
+	}
+
+	/**
+	 * Run system commands asynchronously.
+	 *
+	 * @param command {@link String}
+	 * @return {@link CompletableFuture}&lt;{@link CommandLineResponse}&gt;
+	 */
+	public static CompletableFuture<CommandLineResponse> execAsync(final String command) {
+		return execAsync(command, DEFAULT_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Run system commands asynchronously. The whole process tree is killed if the
+	 * command does not finish within the given timeout.
+	 *
+	 * @param command {@link String}
+	 * @param timeout {@link Long}
+	 * @param unit    {@link TimeUnit}
+	 * @return {@link CompletableFuture}&lt;{@link CommandLineResponse}&gt;
+	 */
+	public static CompletableFuture<CommandLineResponse> execAsync(final String command, long timeout,
+			TimeUnit unit) {
+		if (isEmpty(command)) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return execCommandAsync(timeout, unit, getShellCommand(command));
+	}
+
+	private static String[] getShellCommand(final String command) {
 		if (Platform.CURRENT_PLATFORM == Platform.WINDOWS) {
-			return execCommand("cmd", "/c", command);
+			return new String[] { "cmd", "/c", command };
 		}
-		return execCommand("bash", "-c", command.trim());
+		return new String[] { "bash", "-c", command.trim() };
 	}
 
 	public static CommandLineResponse execCommand(final String... command) {
+		return execCommand(DEFAULT_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS, command);
+	}
+
+	public static CommandLineResponse execCommand(long timeout, TimeUnit unit, final String... command) {
 		if (command == null || command.length == 0) {
 			return null;
 		}
+		try {
+			return execCommandAsync(timeout, unit, command).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof TimeoutException) {
+				log.error("command '{}' did not finish within {} {}", String.join(" ", command), timeout,
+						unit.toString().toLowerCase());
+			} else {
+				e.printStackTrace();
+			}
+			return null;
+		}
+	}
+
+	public static CompletableFuture<CommandLineResponse> execCommandAsync(final String... command) {
+		return execCommandAsync(DEFAULT_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS, command);
+	}
+
+	/**
+	 * Run the given command asynchronously. stdout and stderr are drained
+	 * concurrently on a shared bounded pool so that chatty commands never block on
+	 * a full pipe, and the whole process tree is killed once the timeout elapses.
+	 * The calling thread only blocks when the maximum number of concurrent
+	 * processes ('command.max_concurrent_processes') are already running.
+	 *
+	 * @param timeout {@link Long}
+	 * @param unit    {@link TimeUnit}
+	 * @param command {@link String}[]
+	 * @return {@link CompletableFuture}&lt;{@link CommandLineResponse}&gt;
+	 */
+	public static CompletableFuture<CommandLineResponse> execCommandAsync(long timeout, TimeUnit unit,
+			final String... command) {
+		if (command == null || command.length == 0) {
+			return CompletableFuture.completedFuture(null);
+		}
 		String _cmd = String.join(" ", command);
 		log.debug("executing command : {}", _cmd);
-		Process process = null;
+
+		Process process;
+		try {
+			PROCESS_PERMITS.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			CompletableFuture<CommandLineResponse> future = new CompletableFuture<>();
+			future.completeExceptionally(e);
+			return future;
+		}
 		try {
-			ProcessBuilder builder = new ProcessBuilder(command);
+			process = startProcess(_cmd, command);
+		} catch (Exception e) {
+			PROCESS_PERMITS.release();
+			CompletableFuture<CommandLineResponse> future = new CompletableFuture<>();
+			future.completeExceptionally(e);
+			return future;
+		}
+		CompletableFuture<String> stdOut = drain(process, process.getInputStream());
+		CompletableFuture<String> errOut = drain(process, process.getErrorStream());
+		CompletableFuture.allOf(process.onExit(), stdOut, errOut).whenComplete((v, e) -> PROCESS_PERMITS.release());
+
+		return process.onExit().thenCombine(stdOut, (p, out) -> {
 			CommandLineResponse response = new CommandLineResponse();
-			if (Platform.CURRENT_PLATFORM != Platform.WINDOWS) {
-				Map<String, String> env = builder.environment();
-				env.put("PATH", env.get("PATH") + ":/usr/local/bin:" + System.getenv("HOME") + "/.linuxbrew/bin");
-				process = builder.start();
-			} else {
-				Map<String, String> env = builder.environment();
-				env.put("PATH", System.getenv("Path") == null ? System.getenv("PATH") : System.getenv("Path"));
-				process = Runtime.getRuntime().exec("cmd /C " + String.join(" ", _cmd));
-			}
-			process.waitFor(60, TimeUnit.SECONDS);
-			response.setStdOut(CommonUtilities.toString(process.getInputStream()).trim());
-			response.setErrOut(CommonUtilities.toString(process.getErrorStream()).trim());
+			response.setStdOut(out);
+			return response;
+		}).thenCombine(errOut, (response, err) -> {
+			response.setErrOut(err);
 			response.setExitCode(process.exitValue());
 			log.debug("response: {}", response);
 			return response;
-		} catch (Exception e) {
-			e.printStackTrace();
-			return null;
-		} finally {
-			if (process != null) {
-				process.destroy();
+		}).orTimeout(timeout, unit).whenComplete((response, e) -> {
+			if (e != null) {
+				destroyProcessTree(process);
+				// children orphaned before the timeout are out of reach of
+				// destroyProcessTree and may still write to the pipes
+				closeQuietly(process.getInputStream());
+				closeQuietly(process.getErrorStream());
 			}
+		});
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			// already closed
+		}
+	}
+
+	private static Process startProcess(String _cmd, final String... command) throws Exception {
+		ProcessBuilder builder = new ProcessBuilder(command);
+		if (Platform.CURRENT_PLATFORM != Platform.WINDOWS) {
+			Map<String, String> env = builder.environment();
+			env.put("PATH", env.get("PATH") + ":/usr/local/bin:" + System.getenv("HOME") + "/.linuxbrew/bin");
+			return builder.start();
+		} else {
+			Map<String, String> env = builder.environment();
+			env.put("PATH", System.getenv("Path") == null ? System.getenv("PATH") : System.getenv("Path"));
+			return Runtime.getRuntime().exec("cmd /C " + String.join(" ", _cmd));
+		}
+	}
+
+	/**
+	 * Read the given stream of the given process until the process exited and the
+	 * pipe is empty. Only the bytes already available are read: a background
+	 * child that inherited the pipe would otherwise keep a blocking read, and the
+	 * drainer thread, waiting long after the process exited.
+	 */
+	private static CompletableFuture<String> drain(Process process, InputStream stream) {
+		return CompletableFuture.supplyAsync(() -> {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			try {
+				while (true) {
+					int available = stream.available();
+					if (available > 0) {
+						out.write(buffer, 0, stream.read(buffer, 0, Math.min(available, buffer.length)));
+					} else if (!process.isAlive()) {
+						break;
+					} else {
+						process.waitFor(DRAIN_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+					}
+				}
+			} catch (IOException e) {
+				// closed on timeout, keep what was read
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return out.toString(Charset.defaultCharset()).trim();
+		}, STREAM_DRAINERS);
+	}
+
+	/**
+	 * Forcibly kill the given process along with all of its descendants
+	 *
+	 * @param process {@link Process}
+	 */
+	public static void destroyProcessTree(Process process) {
+		if (process == null) {
+			return;
 		}
+		process.descendants().forEach(ProcessHandle::destroyForcibly);
+		process.destroyForcibly();
 	}
 
-}
\ No newline at end of file
+}
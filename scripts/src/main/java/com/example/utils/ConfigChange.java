@@ -0,0 +1,48 @@
+package com.example.utils;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import lombok.NonNull;
+import lombok.Value;
+
+@Value
+public class ConfigChange {
+
+	private final ConfigSnapshot previous;
+	private final ConfigSnapshot current;
+	/**
+	 * keys added, removed or whose value changed, sorted
+	 */
+	private final Set<String> keys;
+
+	static ConfigChange between(@NonNull ConfigSnapshot previous, @NonNull ConfigSnapshot current) {
+		Set<String> keys = new TreeSet<>();
+		Set<String> all = new HashSet<>(previous.getKeys());
+		all.addAll(current.getKeys());
+		for (String key : all) {
+			String before = previous.getString(key, null);
+			String after = current.getString(key, null);
+			if (before == null ? after != null : !before.equals(after)) {
+				keys.add(key);
+			}
+		}
+		return new ConfigChange(previous, current, keys);
+	}
+
+	public boolean isEmpty() {
+		return keys.isEmpty();
+	}
+
+	/**
+	 * Check whether any of the given keys changed
+	 *
+	 * @param keys {@link String}
+	 * @return {@link Boolean}
+	 */
+	public boolean contains(@NonNull String... keys) {
+		return Arrays.stream(keys).map(String::trim).anyMatch(this.keys::contains);
+	}
+}
@@ -0,0 +1,13 @@
+package com.example.utils;
+
+@FunctionalInterface
+public interface ConfigListener {
+
+	/**
+	 * Called from the thread reloading the configuration, once the new snapshot
+	 * is published, if at least one key changed
+	 *
+	 * @param change {@link ConfigChange}
+	 */
+	void onChange(ConfigChange change);
+}
@@ -5,77 +5,286 @@ import static com.example.utils.CommonUtilities.isBlank;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Configuration of the run, resolved into a {@link ConfigSnapshot} from the
+ * environment, the system properties, 'default.properties' and
+ * 'config.properties'. Long running processes can pick up edits of the
+ * properties files without a restart: {@link #reload()} publishes a new
+ * snapshot atomically, appends every changed key to 'config.audit.file' and
+ * notifies the subscribed {@link ConfigListener}s, and {@link #startWatching()}
+ * reloads whenever one of the loaded files is modified.
+ */
 @Slf4j
 public final class ConfigManager {
 
 	private static final String DEFAULT_CONFIG_FILE = "default.properties";
 	private static final String CONFIG_FILE = "config.properties";
+	// editors often save in several writes, reload once the file is quiet
+	private static final long RELOAD_DELAY = 200;
+	private static final Pattern SECRET_KEY = Pattern.compile("(?i).*(password|secret|token|api_?key).*");
 
-	private static final Properties PROPS = new Properties();
-	private static final String ENV = getString("env");
+	// the first file of each name found on the classpath, as loaded at startup
+	private static final List<URL> CONFIG_FILES = getConfigFiles();
+	// merged properties files of the current snapshot
+	private static Properties fileProperties;
+	private static final AtomicReference<ConfigSnapshot> SNAPSHOT = new AtomicReference<>(load());
+	private static final List<ConfigListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+	private static WatchService watcher;
+	private static Thread watcherThread;
 
 	private ConfigManager() {
 	}
 
-	private static void loadProperties() {
-		loadProperties(DEFAULT_CONFIG_FILE);
-		loadProperties(CONFIG_FILE);
+	private static List<URL> getConfigFiles() {
+		List<URL> files = new ArrayList<>();
+		for (String confFile : Arrays.asList(DEFAULT_CONFIG_FILE, CONFIG_FILE)) {
+			List<URL> urls = getResources(confFile);
+			if (urls != null && !urls.isEmpty()) {
+				files.add(urls.get(0));
+			}
+		}
+		return Collections.unmodifiableList(files);
 	}
 
-	private static void loadProperties(String confFile) {
-		List<URL> files = getResources(confFile);
-		if (files != null && !files.isEmpty()) {
-			try (InputStream stream = files.get(0).openStream()) {
-				PROPS.load(stream);
-			} catch (IOException e) {
-				log.error("unable to load properties file '{}'", confFile);
-				e.printStackTrace();
+	private static ConfigSnapshot load() {
+		fileProperties = loadProperties(false);
+		return ConfigSnapshot.of(System.getenv(), System.getProperties(), fileProperties);
+	}
+
+	/**
+	 * @param strict {@link Boolean} - whether to give up when a file cannot be
+	 *               read rather than skip it
+	 * @return {@link Properties} - <code>null</code> if strict and a file could
+	 *         not be read
+	 */
+	private static Properties loadProperties(boolean strict) {
+		Properties props = new Properties();
+		for (URL file : CONFIG_FILES) {
+			try (InputStream stream = file.openStream()) {
+				props.load(stream);
+			} catch (IOException | IllegalArgumentException e) {
+				log.error("unable to load properties file '{}' => {}", file, e.getMessage());
+				if (strict) {
+					return null;
+				}
 			}
 		}
+		return props;
 	}
 
-	public static String getString(@NonNull String key) {
-		return getString(key, null);
+	/**
+	 * Get the current configuration, for callers reading many keys
+	 *
+	 * @return {@link ConfigSnapshot}
+	 */
+	public static ConfigSnapshot getSnapshot() {
+		return SNAPSHOT.get();
 	}
 
-	public static String getString(@NonNull String propertyKey, String defaultValue) {
+	/**
+	 * Resolve the configuration again and publish it. Nothing is published if
+	 * one of the properties files cannot be read, e.g. while it is being saved.
+	 * Keys missing from the files keep their current value, so that a file
+	 * caught half written does not drop the rest of the configuration; removing
+	 * a key takes a restart.
+	 *
+	 * @return {@link ConfigChange} - the keys that changed, <code>null</code> if
+	 *         the files could not be read
+	 */
+	public static synchronized ConfigChange reload() {
+		Properties props = loadProperties(true);
+		if (props == null) {
+			log.error("configuration not reloaded, keeping the current one");
+			return null;
+		}
+		Set<String> missing = new TreeSet<>(fileProperties.stringPropertyNames());
+		missing.removeAll(props.stringPropertyNames());
+		if (!missing.isEmpty()) {
+			log.warn("keys {} missing from the properties files, keeping their current values", missing);
+			missing.forEach(key -> props.setProperty(key, fileProperties.getProperty(key)));
+		}
+		fileProperties = props;
+		ConfigSnapshot current = ConfigSnapshot.of(System.getenv(), System.getProperties(), props);
+		ConfigChange change = ConfigChange.between(SNAPSHOT.getAndSet(current), current);
+		if (change.isEmpty()) {
+			log.debug("configuration reloaded, nothing changed");
+			return change;
+		}
+		audit(change);
+		for (ConfigListener listener : LISTENERS) {
+			try {
+				listener.onChange(change);
+			} catch (Exception e) {
+				log.error(String.format("config listener failed on %s", change.getKeys()), e);
+			}
+		}
+		return change;
+	}
 
-		if (PROPS.isEmpty()) {
-			synchronized (ConfigManager.class) {
-				if (PROPS.isEmpty()) {
-					loadProperties();
-				}
+	private static void audit(ConfigChange change) {
+		String timestamp = Instant.now().toString();
+		List<String> lines = new ArrayList<>();
+		for (String key : change.getKeys()) {
+			String line = String.format("%s %s: %s -> %s", timestamp, key,
+					toAuditValue(key, change.getPrevious().getString(key, null)),
+					toAuditValue(key, change.getCurrent().getString(key, null)));
+			log.info("configuration changed ::: {}", line.substring(timestamp.length() + 1));
+			lines.add(line);
+		}
+		String auditFile = change.getCurrent().getString("config.audit.file", null);
+		if (isBlank(auditFile)) {
+			return;
+		}
+		Path path = Paths.get(auditFile);
+		try {
+			if (path.getParent() != null) {
+				Files.createDirectories(path.getParent());
 			}
+			Files.write(path, lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		} catch (IOException e) {
+			log.error("unable to write the configuration audit log '{}' => {}", path.toAbsolutePath(),
+					e.getMessage());
 		}
-		String key = propertyKey.trim();
-		String keyWithEnv = String.format("%s.%s", ENV, key);
+	}
 
-		String value = null;
+	private static String toAuditValue(String key, String value) {
+		if (value == null) {
+			return "<unset>";
+		}
+		return SECRET_KEY.matcher(key).matches() ? "'***'" : String.format("'%s'", value);
+	}
+
+	public static void subscribe(@NonNull ConfigListener listener) {
+		LISTENERS.add(listener);
+	}
+
+	public static void unsubscribe(@NonNull ConfigListener listener) {
+		LISTENERS.remove(listener);
+	}
 
-		if (!isBlank(ENV)) {
-			value = System.getenv(keyWithEnv);
-			if (value != null) {
-				return value.trim();
+	/**
+	 * Reload the configuration whenever one of the loaded properties files is
+	 * modified. Files inside a jar cannot be watched. Calling it more than once
+	 * has no effect.
+	 */
+	public static synchronized void startWatching() {
+		if (watcherThread != null) {
+			return;
+		}
+		Set<Path> files = new HashSet<>();
+		for (URL url : CONFIG_FILES) {
+			try {
+				files.add(Paths.get(url.toURI()).toAbsolutePath());
+			} catch (URISyntaxException | IllegalArgumentException | FileSystemNotFoundException e) {
+				log.warn("unable to watch properties file '{}'", url);
 			}
 		}
-		value = System.getenv(key);
-		if (value != null) {
-			return value.trim();
+		if (files.isEmpty()) {
+			return;
 		}
-		if (!isBlank(ENV)) {
-			value = System.getProperty(keyWithEnv, PROPS.getProperty(keyWithEnv));
+		try {
+			watcher = FileSystems.getDefault().newWatchService();
+			for (Path directory : files.stream().map(Path::getParent).collect(Collectors.toSet())) {
+				directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_MODIFY);
+			}
+		} catch (IOException e) {
+			log.error("unable to watch the properties files => {}", e.getMessage());
+			stopWatching();
+			return;
 		}
-		return isBlank(value) ? System.getProperty(key, PROPS.getProperty(key, defaultValue)) : value;
+		WatchService _watcher = watcher;
+		watcherThread = new Thread(() -> watch(_watcher, files), "config-watcher");
+		watcherThread.setDaemon(true);
+		watcherThread.start();
+		log.info("watching {} for configuration changes", files);
+	}
+
+	public static synchronized void stopWatching() {
+		if (watcherThread != null) {
+			watcherThread.interrupt();
+			watcherThread = null;
+		}
+		if (watcher != null) {
+			try {
+				watcher.close();
+			} catch (IOException e) {
+				// nothing left to watch
+			}
+			watcher = null;
+		}
+	}
+
+	private static void watch(WatchService watcher, Set<Path> files) {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				boolean modified = isModified(watcher.take(), files);
+				WatchKey key;
+				while ((key = watcher.poll(RELOAD_DELAY, TimeUnit.MILLISECONDS)) != null) {
+					modified |= isModified(key, files);
+				}
+				if (modified) {
+					reload();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			// stopped
+		}
+	}
+
+	private static boolean isModified(WatchKey key, Set<Path> files) {
+		Path directory = (Path) key.watchable();
+		boolean modified = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.context() instanceof Path && files.contains(directory.resolve((Path) event.context()))) {
+				modified = true;
+			}
+		}
+		key.reset();
+		return modified;
+	}
+
+	public static String getString(@NonNull String key) {
+		return getString(key, null);
+	}
+
+	public static String getString(@NonNull String propertyKey, String defaultValue) {
+		return SNAPSHOT.get().getString(propertyKey, defaultValue);
 	}
 
 	public static int getInt(@NonNull String key) {
@@ -83,11 +292,7 @@ public final class ConfigManager {
 	}
 
 	public static int getInt(@NonNull String key, int defaultValue) {
-		try {
-			return Integer.parseInt(getString(key, String.valueOf(defaultValue)));
-		} catch (Exception e) {
-			return 0;
-		}
+		return SNAPSHOT.get().getInt(key, defaultValue);
 	}
 
 	public static float getFloat(@NonNull String key) {
@@ -95,11 +300,7 @@ public final class ConfigManager {
 	}
 
 	public static float getFloat(@NonNull String key, float defaultValue) {
-		try {
-			return Float.parseFloat(getString(key, String.valueOf(defaultValue)));
-		} catch (Exception e) {
-			return 0;
-		}
+		return SNAPSHOT.get().getFloat(key, defaultValue);
 	}
 
 	public static long getLong(@NonNull String key) {
@@ -107,11 +308,7 @@ public final class ConfigManager {
 	}
 
 	public static long getLong(@NonNull String key, long defaultValue) {
-		try {
-			return Long.parseLong(getString(key, String.valueOf(defaultValue)));
-		} catch (Exception e) {
-			return 0;
-		}
+		return SNAPSHOT.get().getLong(key, defaultValue);
 	}
 
 	public static double getDouble(@NonNull String key) {
@@ -119,11 +316,7 @@ public final class ConfigManager {
 	}
 
 	public static double getDouble(@NonNull String key, double defaultValue) {
-		try {
-			return Double.parseDouble(getString(key, String.valueOf(defaultValue)));
-		} catch (Exception e) {
-			return 0;
-		}
+		return SNAPSHOT.get().getDouble(key, defaultValue);
 	}
 
 	public static boolean getBoolean(@NonNull String key) {
@@ -131,11 +324,7 @@ public final class ConfigManager {
 	}
 
 	public static boolean getBoolean(@NonNull String key, boolean defaultValue) {
-		try {
-			return Boolean.parseBoolean(getString(key, String.valueOf(defaultValue)));
-		} catch (Exception e) {
-			return false;
-		}
+		return SNAPSHOT.get().getBoolean(key, defaultValue);
 	}
 
 	public static List<String> getList(@NonNull String key) {
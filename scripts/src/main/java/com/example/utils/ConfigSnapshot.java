@@ -0,0 +1,186 @@
+package com.example.utils;
+
+import static com.example.utils.CommonUtilities.isBlank;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import lombok.NonNull;
+
+/**
+ * Configuration resolved once: every key of the environment, the system
+ * properties and the properties files, with the precedence
+ * {@link ConfigManager} has always applied (highest first):
+ * <ol>
+ * <li>environment variable <code>&lt;env&gt;.&lt;key&gt;</code></li>
+ * <li>environment variable <code>&lt;key&gt;</code></li>
+ * <li>system property, then file property, <code>&lt;env&gt;.&lt;key&gt;</code>
+ * unless blank</li>
+ * <li>system property, then file property, <code>&lt;key&gt;</code></li>
+ * </ol>
+ * where <code>&lt;env&gt;</code> is the resolved value of 'env'. Numbers and
+ * booleans are parsed when the snapshot is built, so a lookup is a single hash
+ * map access. The snapshot is immutable: changes to the system properties or
+ * the files are only seen by the next one, see {@link ConfigManager#reload()}.
+ */
+public final class ConfigSnapshot {
+
+	private final String env;
+	private final Map<String, Value> values;
+
+	private ConfigSnapshot(String env, Map<String, Value> values) {
+		this.env = env;
+		this.values = values;
+	}
+
+	/**
+	 * Resolve the given layers
+	 *
+	 * @param env              {@link Map} - environment variables
+	 * @param systemProperties {@link Properties}
+	 * @param fileProperties   {@link Properties} - merged properties files
+	 * @return {@link ConfigSnapshot}
+	 */
+	public static ConfigSnapshot of(@NonNull Map<String, String> env, @NonNull Properties systemProperties,
+			@NonNull Properties fileProperties) {
+		String envName = resolve(null, "env", env, systemProperties, fileProperties);
+		String prefix = isBlank(envName) ? null : envName + ".";
+		Set<String> keys = new HashSet<>(env.keySet());
+		keys.addAll(systemProperties.stringPropertyNames());
+		keys.addAll(fileProperties.stringPropertyNames());
+		if (prefix != null) {
+			// <env>.<key> entries also answer lookups of <key>
+			new HashSet<>(keys).stream().filter(key -> key.startsWith(prefix))
+					.forEach(key -> keys.add(key.substring(prefix.length())));
+		}
+		Map<String, Value> values = new HashMap<>();
+		for (String key : keys) {
+			String value = resolve(envName, key, env, systemProperties, fileProperties);
+			if (value != null) {
+				values.put(key, new Value(value));
+			}
+		}
+		return new ConfigSnapshot(envName, Collections.unmodifiableMap(values));
+	}
+
+	private static String resolve(String envName, String key, Map<String, String> env, Properties systemProperties,
+			Properties fileProperties) {
+		String keyWithEnv = isBlank(envName) ? null : envName + "." + key;
+		String value = keyWithEnv != null ? env.get(keyWithEnv) : null;
+		if (value == null) {
+			value = env.get(key);
+		}
+		if (value != null) {
+			return value.trim();
+		}
+		if (keyWithEnv != null) {
+			value = systemProperties.getProperty(keyWithEnv, fileProperties.getProperty(keyWithEnv));
+		}
+		return isBlank(value) ? systemProperties.getProperty(key, fileProperties.getProperty(key)) : value;
+	}
+
+	/**
+	 * @return {@link String} - resolved value of 'env', <code>null</code> if
+	 *         not set
+	 */
+	public String getEnv() {
+		return env;
+	}
+
+	/**
+	 * @return {@link Set}&lt;{@link String}&gt; - every resolved key
+	 */
+	public Set<String> getKeys() {
+		return values.keySet();
+	}
+
+	public boolean contains(@NonNull String key) {
+		return values.containsKey(key.trim());
+	}
+
+	public String getString(@NonNull String key, String defaultValue) {
+		Value value = values.get(key.trim());
+		return value != null ? value.string : defaultValue;
+	}
+
+	/**
+	 * @return the parsed value, the default value if the key is not set or 0 if
+	 *         the value is not a number, as {@link ConfigManager#getInt} has
+	 *         always done
+	 */
+	public int getInt(@NonNull String key, int defaultValue) {
+		Value value = values.get(key.trim());
+		return value == null ? defaultValue : value.intValue != null ? value.intValue : 0;
+	}
+
+	public long getLong(@NonNull String key, long defaultValue) {
+		Value value = values.get(key.trim());
+		return value == null ? defaultValue : value.longValue != null ? value.longValue : 0;
+	}
+
+	public float getFloat(@NonNull String key, float defaultValue) {
+		Value value = values.get(key.trim());
+		return value == null ? defaultValue : value.floatValue != null ? value.floatValue : 0;
+	}
+
+	public double getDouble(@NonNull String key, double defaultValue) {
+		Value value = values.get(key.trim());
+		return value == null ? defaultValue : value.doubleValue != null ? value.doubleValue : 0;
+	}
+
+	public boolean getBoolean(@NonNull String key, boolean defaultValue) {
+		Value value = values.get(key.trim());
+		return value == null ? defaultValue : value.booleanValue;
+	}
+
+	/**
+	 * A resolved value, parsed with the same methods the typed getters of
+	 * {@link ConfigManager} have always used
+	 */
+	private static final class Value {
+
+		private final String string;
+		private final Integer intValue;
+		private final Long longValue;
+		private final Float floatValue;
+		private final Double doubleValue;
+		private final boolean booleanValue;
+
+		private Value(String string) {
+			this.string = string;
+			Integer _intValue = null;
+			Long _longValue = null;
+			Float _floatValue = null;
+			Double _doubleValue = null;
+			try {
+				_intValue = Integer.parseInt(string);
+			} catch (NumberFormatException e) {
+				// not an int
+			}
+			try {
+				_longValue = Long.parseLong(string);
+			} catch (NumberFormatException e) {
+				// not a long
+			}
+			try {
+				_floatValue = Float.parseFloat(string);
+			} catch (NumberFormatException e) {
+				// not a float
+			}
+			try {
+				_doubleValue = Double.parseDouble(string);
+			} catch (NumberFormatException e) {
+				// not a double
+			}
+			this.intValue = _intValue;
+			this.longValue = _longValue;
+			this.floatValue = _floatValue;
+			this.doubleValue = _doubleValue;
+			this.booleanValue = Boolean.parseBoolean(string);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.example.utils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hands out local ports to owners (e.g. a device's Appium service or session).
+ * A port is only leased after successfully binding it, so ports taken by other
+ * processes are skipped instead of killed, and released ports are handed out
+ * again so long runs stay within 'ports.range_size' ports of each base port.
+ */
+@Slf4j
+public final class PortAllocator {
+
+	private static final int MAX_PORT = 65535;
+
+	private static final Map<Integer, String> LEASES = new ConcurrentHashMap<>();
+
+	private PortAllocator() {
+	}
+
+	/**
+	 * Lease the first free port in [basePort, basePort + 'ports.range_size')
+	 *
+	 * @param basePort {@link Integer}
+	 * @param owner    {@link String} - tag used to release the port later
+	 * @return {@link Integer}
+	 */
+	public static int lease(int basePort, @NonNull String owner) {
+		if (basePort < 1 || basePort > MAX_PORT) {
+			throw new IllegalArgumentException(String.format("invalid base port %d for '%s'", basePort, owner));
+		}
+		int lastPort = Math.min(MAX_PORT, basePort + getRangeSize() - 1);
+		for (int port = basePort; port <= lastPort; port++) {
+			if (LEASES.putIfAbsent(port, owner) == null) {
+				if (isFree(port)) {
+					log.debug("leased port {} to '{}'", port, owner);
+					return port;
+				}
+				LEASES.remove(port, owner);
+			}
+		}
+		throw new RuntimeException(
+				String.format("no free port in range [%d, %d] for '%s'", basePort, lastPort, owner));
+	}
+
+	private static int getRangeSize() {
+		return Math.max(1, ConfigManager.getInt("ports.range_size", 100));
+	}
+
+	/**
+	 * Check whether the given port can be bound on all local interfaces
+	 *
+	 * @param port {@link Integer}
+	 * @return {@link Boolean}
+	 */
+	public static boolean isFree(int port) {
+		try (ServerSocket socket = new ServerSocket()) {
+			socket.setReuseAddress(false);
+			socket.bind(new InetSocketAddress(port));
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	public static void release(int port) {
+		String owner = LEASES.remove(port);
+		if (owner != null) {
+			log.debug("released port {} of '{}'", port, owner);
+		}
+	}
+
+	/**
+	 * Release every port leased to the given owner
+	 *
+	 * @param owner {@link String}
+	 */
+	public static void releaseAll(@NonNull String owner) {
+		LEASES.entrySet().removeIf(entry -> {
+			if (owner.equals(entry.getValue())) {
+				log.debug("released port {} of '{}'", entry.getKey(), owner);
+				return true;
+			}
+			return false;
+		});
+	}
+
+	/**
+	 * Get the current leases
+	 *
+	 * @return {@link Map}&lt;{@link Integer}, {@link String}&gt; - port to owner
+	 */
+	public static Map<Integer, String> getLeases() {
+		return new TreeMap<>(LEASES);
+	}
+}
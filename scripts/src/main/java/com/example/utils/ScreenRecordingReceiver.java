@@ -0,0 +1,182 @@
+package com.example.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Local HTTP endpoint receiving screen recordings uploaded by Appium through
+ * the <code>remotePath</code> option of <code>stopRecordingScreen</code>. The
+ * upload body is streamed straight into the target file through a fixed
+ * buffer, so the size of a recording no longer matters to the heap (no Base64
+ * string, no decoded copy). Every upload URL is single use; uploads without a
+ * target file are read and discarded.
+ */
+@Slf4j
+public final class ScreenRecordingReceiver {
+
+	private static final String CONTEXT = "/recordings/";
+	private static final String OWNER = "screen-recording-receiver";
+	private static final String HOST = ConfigManager.getString("ui.record_video.receiver.host", "127.0.0.1");
+	private static final int BASE_PORT = ConfigManager.getInt("ui.record_video.receiver.port", 4300);
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final Map<String, Upload> UPLOADS = new ConcurrentHashMap<>();
+
+	private static HttpServer server;
+	private static ExecutorService executor;
+
+	private ScreenRecordingReceiver() {
+	}
+
+	public static boolean isEnabled() {
+		return ConfigManager.getBoolean("ui.record_video.upload", true);
+	}
+
+	/**
+	 * Start the receiver if it is not running yet
+	 *
+	 * @return {@link Boolean} - whether the receiver is running
+	 */
+	public static synchronized boolean start() {
+		if (server != null) {
+			return true;
+		}
+		int port = PortAllocator.lease(BASE_PORT, OWNER);
+		try {
+			HttpServer _server = HttpServer.create(new InetSocketAddress(HOST, port), 0);
+			AtomicInteger count = new AtomicInteger();
+			executor = Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "screen-recording-receiver-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+			_server.setExecutor(executor);
+			_server.createContext(CONTEXT, ScreenRecordingReceiver::handle);
+			_server.start();
+			server = _server;
+			log.info("screen recording receiver listening at http://{}:{}{}", HOST, port, CONTEXT);
+			return true;
+		} catch (IOException e) {
+			log.error("unable to start the screen recording receiver on port {} => {}", port, e.getMessage());
+			PortAllocator.releaseAll(OWNER);
+			return false;
+		}
+	}
+
+	public static synchronized void stop() {
+		if (server == null) {
+			return;
+		}
+		server.stop(0);
+		executor.shutdownNow();
+		server = null;
+		executor = null;
+		UPLOADS.clear();
+		PortAllocator.releaseAll(OWNER);
+	}
+
+	/**
+	 * Register a single use upload URL for the given file, starting the receiver
+	 * if needed
+	 *
+	 * @param file {@link File} - <code>null</code> to discard the upload
+	 * @return {@link String} - URL to pass as <code>remotePath</code> or
+	 *         <code>null</code> if the receiver is not running
+	 */
+	public static String register(final File file) {
+		if (!start()) {
+			return null;
+		}
+		String id = UUID.randomUUID().toString();
+		UPLOADS.put(id, new Upload(file));
+		return String.format("http://%s:%d%s%s", HOST, server.getAddress().getPort(), CONTEXT, id);
+	}
+
+	/**
+	 * Drop an upload URL that was not used
+	 *
+	 * @param url {@link String}
+	 */
+	public static void unregister(final String url) {
+		if (url != null) {
+			UPLOADS.remove(url.substring(url.lastIndexOf('/') + 1));
+		}
+	}
+
+	private static void handle(HttpExchange exchange) throws IOException {
+		try {
+			String path = exchange.getRequestURI().getPath();
+			Upload upload = UPLOADS.remove(path.substring(path.lastIndexOf('/') + 1));
+			String method = exchange.getRequestMethod();
+			if (upload == null || !("PUT".equals(method) || "POST".equals(method))) {
+				exchange.sendResponseHeaders(upload == null ? 404 : 405, -1);
+				return;
+			}
+			long start = System.currentTimeMillis();
+			long size;
+			try (InputStream in = exchange.getRequestBody()) {
+				size = upload.file == null ? discard(in) : copy(in, upload.file);
+			} catch (IOException e) {
+				log.error("unable to receive screen recording => {}", e.getMessage());
+				exchange.sendResponseHeaders(500, -1);
+				return;
+			}
+			log.debug("received {} bytes of screen recording{} in {} ms", size,
+					upload.file == null ? " (discarded)" : " into '" + upload.file + "'",
+					System.currentTimeMillis() - start);
+			exchange.sendResponseHeaders(200, -1);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static long copy(InputStream in, File file) throws IOException {
+		if (file.getParentFile() != null && !file.getParentFile().exists()) {
+			file.getParentFile().mkdirs();
+		}
+		try (OutputStream out = Files.newOutputStream(file.toPath())) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long size = 0;
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				out.write(buffer, 0, read);
+				size += read;
+			}
+			return size;
+		}
+	}
+
+	private static long discard(InputStream in) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long size = 0;
+		int read;
+		while ((read = in.read(buffer)) > 0) {
+			size += read;
+		}
+		return size;
+	}
+
+	private static final class Upload {
+
+		private final File file;
+
+		private Upload(File file) {
+			this.file = file;
+		}
+	}
+}
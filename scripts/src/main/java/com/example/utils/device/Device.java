@@ -0,0 +1,43 @@
+package com.example.utils.device;
+
+import com.example.utils.webdriver.ADBUtilities;
+import com.example.utils.webdriver.IOSUtilities;
+
+import lombok.NonNull;
+import lombok.Value;
+
+@Value
+public class Device {
+
+	private final String id;
+	private final boolean android;
+	private final String model;
+	private final String osVersion;
+	private final boolean emulator;
+
+	/**
+	 * Describe the connected android device identified by the given id
+	 *
+	 * @param deviceId {@link String}
+	 * @return {@link Device}
+	 */
+	public static Device android(@NonNull String deviceId) {
+		String model = ADBUtilities.getConnectedDevices().get(deviceId);
+		String osVersion = ADBUtilities.getDeviceProperty(deviceId, "ro.build.version.release");
+		boolean emulator = deviceId.startsWith("emulator-")
+				|| "1".equals(ADBUtilities.getDeviceProperty(deviceId, "ro.kernel.qemu"));
+		return new Device(deviceId, true, model, osVersion, emulator);
+	}
+
+	/**
+	 * Describe the connected iOS device or booted simulator identified by the
+	 * given id
+	 *
+	 * @param deviceId {@link String}
+	 * @return {@link Device}
+	 */
+	public static Device ios(@NonNull String deviceId) {
+		return new Device(deviceId, false, IOSUtilities.getConnectedDevices().get(deviceId), null,
+				IOSUtilities.getConnectedSimulators().containsKey(deviceId));
+	}
+}
@@ -0,0 +1,45 @@
+package com.example.utils.device;
+
+import com.example.utils.CommonUtilities;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * Requirements a {@link Device} has to meet to be leased from the
+ * {@link DevicePool}. Unset ( <code>null</code> ) fields match any device.
+ */
+@Value
+@Builder
+public class DeviceCriteria {
+
+	public static final DeviceCriteria ANY = DeviceCriteria.builder().build();
+
+	/** <code>true</code> for android, <code>false</code> for iOS */
+	private final Boolean android;
+
+	/** case-insensitive substring of the device model */
+	private final String model;
+
+	/** prefix of the OS version, e.g. "11" matches "11.0.1" */
+	private final String osVersion;
+
+	/** <code>true</code> for emulators/simulators, <code>false</code> for real devices */
+	private final Boolean emulator;
+
+	public boolean matches(@NonNull Device device) {
+		if (android != null && android != device.isAndroid()) {
+			return false;
+		}
+		if (emulator != null && emulator != device.isEmulator()) {
+			return false;
+		}
+		if (!CommonUtilities.isBlank(model) && (device.getModel() == null
+				|| !device.getModel().toLowerCase().contains(model.trim().toLowerCase()))) {
+			return false;
+		}
+		return CommonUtilities.isBlank(osVersion)
+				|| (device.getOsVersion() != null && device.getOsVersion().startsWith(osVersion.trim()));
+	}
+}
@@ -0,0 +1,26 @@
+package com.example.utils.device;
+
+import lombok.Value;
+
+@Value
+public class DeviceEvent {
+
+	public enum Type {
+		ATTACHED, DETACHED, STATE_CHANGED
+	}
+
+	private final Type type;
+	private final String deviceId;
+	private final boolean android;
+	private final String previousState;
+	private final String state;
+
+	/**
+	 * Whether the device can take sessions after this event
+	 *
+	 * @return {@link Boolean}
+	 */
+	public boolean isOnline() {
+		return type != Type.DETACHED && DeviceRegistry.ONLINE.equals(state);
+	}
+}
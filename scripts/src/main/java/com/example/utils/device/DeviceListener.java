@@ -0,0 +1,13 @@
+package com.example.utils.device;
+
+@FunctionalInterface
+public interface DeviceListener {
+
+	/**
+	 * Called from the registry's dispatcher thread, in order, for every attach,
+	 * detach and state change
+	 *
+	 * @param event {@link DeviceEvent}
+	 */
+	void onEvent(DeviceEvent event);
+}
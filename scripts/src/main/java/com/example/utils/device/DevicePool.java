@@ -0,0 +1,196 @@
+package com.example.utils.device;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pool of devices that test threads lease for the lifetime of a session. The
+ * pool only guards its own bookkeeping (a few list operations under a fair
+ * lock), so any number of threads can create sessions on their leased devices
+ * in parallel. Waiting threads are served in arrival order among those whose
+ * criteria match the released device.
+ */
+@Slf4j
+public final class DevicePool {
+
+	private final ReentrantLock lock = new ReentrantLock(true);
+	private final Condition released = lock.newCondition();
+
+	private final Map<String, Device> devices = new ConcurrentHashMap<>();
+	private final Set<String> leased = ConcurrentHashMap.newKeySet();
+	private final LinkedList<Device> available = new LinkedList<>();
+
+	/**
+	 * Register a device and make it available for leasing. Registering a known
+	 * device has no effect. A device retired while leased (e.g. it went offline
+	 * during a session) is registered again but only becomes available once its
+	 * holder releases it.
+	 *
+	 * @param device {@link Device}
+	 * @return {@link Boolean} - whether the device was added
+	 */
+	public boolean add(@NonNull Device device) {
+		lock.lock();
+		try {
+			if (devices.putIfAbsent(device.getId(), device) != null) {
+				return false;
+			}
+			if (leased.contains(device.getId())) {
+				return true;
+			}
+			available.addLast(device);
+			released.signalAll();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Remove a device from the pool. A leased device is dropped when it is
+	 * released instead of being handed out again.
+	 *
+	 * @param deviceId {@link String}
+	 * @return {@link Boolean} - whether the device was known
+	 */
+	public boolean retire(@NonNull String deviceId) {
+		lock.lock();
+		try {
+			available.removeIf(device -> device.getId().equals(deviceId));
+			return devices.remove(deviceId) != null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Lease the first available device matching the given criteria, waiting up to
+	 * the given timeout for one to be released or attached.
+	 *
+	 * @param criteria {@link DeviceCriteria}
+	 * @param timeout  {@link Long}
+	 * @param unit     {@link TimeUnit}
+	 * @return {@link Device} or <code>null</code> if none became available in time
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public Device lease(@NonNull DeviceCriteria criteria, long timeout, @NonNull TimeUnit unit)
+			throws InterruptedException {
+		long remaining = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while (true) {
+				Device device = take(criteria);
+				if (device != null) {
+					return device;
+				}
+				if (remaining <= 0) {
+					log.error("no device matching {} became available within {} {}", criteria, timeout,
+							unit.toString().toLowerCase());
+					return null;
+				}
+				remaining = released.awaitNanos(remaining);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Lease the first available device matching the given criteria without
+	 * waiting
+	 *
+	 * @param criteria {@link DeviceCriteria}
+	 * @return {@link Device} or <code>null</code>
+	 */
+	public Device tryLease(@NonNull DeviceCriteria criteria) {
+		lock.lock();
+		try {
+			return take(criteria);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private Device take(DeviceCriteria criteria) {
+		Iterator<Device> iterator = available.iterator();
+		while (iterator.hasNext()) {
+			Device device = iterator.next();
+			if (criteria.matches(device)) {
+				iterator.remove();
+				leased.add(device.getId());
+				return device;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Return a leased device to the pool
+	 *
+	 * @param deviceId {@link String}
+	 */
+	public void release(@NonNull String deviceId) {
+		lock.lock();
+		try {
+			if (!leased.remove(deviceId)) {
+				return;
+			}
+			Device device = devices.get(deviceId);
+			if (device == null) {
+				log.warn("device '{}' ::: retired while leased, not returning it to the pool", deviceId);
+				return;
+			}
+			available.addLast(device);
+			released.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public boolean contains(@NonNull String deviceId) {
+		return devices.containsKey(deviceId);
+	}
+
+	public boolean isLeased(@NonNull String deviceId) {
+		return leased.contains(deviceId);
+	}
+
+	public int size() {
+		return devices.size();
+	}
+
+	public boolean isEmpty() {
+		return devices.isEmpty();
+	}
+
+	public List<Device> getDevices() {
+		return new ArrayList<>(devices.values());
+	}
+
+	public void clear() {
+		lock.lock();
+		try {
+			available.clear();
+			leased.clear();
+			devices.clear();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return devices.keySet().toString();
+	}
+}
@@ -0,0 +1,317 @@
+package com.example.utils.device;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import com.example.utils.CommandLineResponse;
+import com.example.utils.CommonUtilities;
+import com.example.utils.ConfigManager;
+import com.example.utils.webdriver.ADBUtilities;
+import com.example.utils.webdriver.AppInstallManager;
+
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pre-flight stage preparing every device concurrently before any session is
+ * created: wake and unlock, disable animations, grant the configured
+ * permissions, clear logcat, install the app under test and warm up the
+ * UiAutomator2 server. Every step is timed and a device whose essential steps
+ * fail, or which does not finish within 'device.prepare.timeout' seconds, is
+ * reported as failed so that it can be excluded from the run. The animation
+ * scales found on the devices are put back by {@link #restore()}.
+ */
+@Slf4j
+public final class DevicePreparation {
+
+	private static final long TIMEOUT = ConfigManager.getLong("device.prepare.timeout", 120);
+	private static final List<String> ANIMATION_SCALES = Arrays.asList("window_animation_scale",
+			"transition_animation_scale", "animator_duration_scale");
+	private static final String UIAUTOMATOR2_SERVER = "io.appium.uiautomator2.server";
+	private static final String UIAUTOMATOR2_SERVER_TEST = "io.appium.uiautomator2.server.test";
+	// the server listens on port 6790 of the device once its instrumentation runs
+	private static final String UIAUTOMATOR2_LISTENING = "grep -qiE ':1A86 [0-9A-F]+:[0-9A-F]+ 0A' "
+			+ "/proc/net/tcp /proc/net/tcp6";
+	private static final long UIAUTOMATOR2_STARTUP_TIMEOUT = 30;
+
+	// animation scales found on each device before they were turned off
+	private static final Map<String, Map<String, String>> ANIMATION_SCALES_BEFORE = new ConcurrentHashMap<>();
+
+	private DevicePreparation() {
+	}
+
+	/**
+	 * Prepare the given devices in parallel. iOS devices are reported as prepared
+	 * without any step.
+	 *
+	 * @param devices {@link Collection}&lt;{@link Device}&gt;
+	 * @return {@link List}&lt;{@link Report}&gt; - one report per device
+	 */
+	public static List<Report> prepare(@NonNull Collection<Device> devices) {
+		if (devices.isEmpty()) {
+			return Collections.emptyList();
+		}
+		long start = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(devices.size());
+		try {
+			List<CompletableFuture<Report>> futures = devices.stream()
+					.map(device -> CompletableFuture.supplyAsync(() -> prepare(device), executor)
+							.orTimeout(TIMEOUT, TimeUnit.SECONDS)
+							.exceptionally(e -> {
+								Throwable cause = e.getCause() == null ? e : e.getCause();
+								return Report.failed(device.getId(), cause instanceof TimeoutException
+										? String.format("not prepared within %d seconds", TIMEOUT)
+										: String.valueOf(cause.getMessage()));
+							}))
+					.collect(Collectors.toList());
+			List<Report> reports = futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+			log.info("prepared {} devices in {} ms", reports.size(), System.currentTimeMillis() - start);
+			reports.forEach(report -> {
+				if (report.isPrepared()) {
+					log.info("{}", report);
+				} else {
+					log.error("{}", report);
+				}
+			});
+			return reports;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static Report prepare(Device device) {
+		Report report = new Report(device.getId());
+		if (!device.isAndroid()) {
+			return report;
+		}
+		String deviceId = device.getId();
+		String appPackage = ConfigManager.getString("appium.android.app_package");
+
+		report.run("wake", true, () -> wake(deviceId));
+		if (!report.isPrepared()) {
+			return report;
+		}
+		report.run("animations", false, () -> disableAnimations(deviceId));
+		report.run("logcat", false, () -> shell(deviceId, "logcat -c"));
+
+		String appPath = ConfigManager.getString("appium.android.app_path");
+		if (ConfigManager.getBoolean("device.prepare.install_app", true) && !CommonUtilities.isBlank(appPath)) {
+			report.run("install", true, () -> AppInstallManager.isEnabled()
+					? AppInstallManager.install(deviceId, appPath, appPackage)
+					: ADBUtilities.installApp(deviceId, appPath));
+		}
+		List<String> permissions = CommonUtilities.isBlank(ConfigManager.getString("device.prepare.permissions"))
+				? Collections.emptyList()
+				: Arrays.stream(ConfigManager.getString("device.prepare.permissions").split(",")).map(String::trim)
+						.filter(permission -> !permission.isEmpty()).collect(Collectors.toList());
+		if (!permissions.isEmpty() && !CommonUtilities.isBlank(appPackage)) {
+			report.run("permissions", false, () -> permissions.stream().allMatch(
+					permission -> shell(deviceId, String.format("pm grant %s %s", appPackage.trim(), permission))));
+		}
+		if (ADBUtilities.isAppInstalled(deviceId, UIAUTOMATOR2_SERVER)
+				&& ADBUtilities.isAppInstalled(deviceId, UIAUTOMATOR2_SERVER_TEST)) {
+			report.run("uiautomator2", false, () -> warmUpUiAutomator2(deviceId));
+		}
+		return report;
+	}
+
+	/**
+	 * Turn the screen on and dismiss the keyguard where it is not secure. Only
+	 * the screen state decides: devices with a secure lock or without
+	 * KEYCODE_WAKEUP (before android 4.4W) fail the unlock commands.
+	 */
+	private static boolean wake(String deviceId) throws InterruptedException {
+		shell(deviceId, "input keyevent KEYCODE_WAKEUP");
+		if (!isAwake(deviceId)) {
+			// KEYCODE_POWER toggles the screen, only send it while asleep
+			shell(deviceId, "input keyevent KEYCODE_POWER");
+		}
+		shell(deviceId, "input keyevent KEYCODE_MENU");
+		shell(deviceId, "wm dismiss-keyguard");
+		for (int i = 0; i < 10 && !isAwake(deviceId); i++) {
+			TimeUnit.MILLISECONDS.sleep(200);
+		}
+		return isAwake(deviceId);
+	}
+
+	private static boolean isAwake(String deviceId) {
+		return shell(deviceId, "dumpsys power | grep -q 'mWakefulness=Awake'");
+	}
+
+	private static boolean disableAnimations(String deviceId) {
+		Map<String, String> before = new LinkedHashMap<>();
+		for (String scale : ANIMATION_SCALES) {
+			CommandLineResponse response = ADBUtilities.shell(deviceId, "settings get global " + scale);
+			if (response == null || response.getExitCode() != 0) {
+				return false;
+			}
+			before.put(scale, response.getStdOut().trim());
+		}
+		// a device prepared again after reconnecting still has the scales of this run
+		ANIMATION_SCALES_BEFORE.putIfAbsent(deviceId, before);
+		return ANIMATION_SCALES.stream()
+				.allMatch(scale -> shell(deviceId, String.format("settings put global %s 0", scale)));
+	}
+
+	/**
+	 * Start the instrumentation of the UiAutomator2 server once, after an ahead of
+	 * time compilation, so that the first session does not pay for loading and
+	 * verifying its code, then stop it again for Appium to start its own
+	 */
+	private static boolean warmUpUiAutomator2(String deviceId) throws InterruptedException {
+		shell(deviceId, String.format("cmd package compile -m speed -f %s", UIAUTOMATOR2_SERVER));
+		shell(deviceId, String.format("cmd package compile -m speed -f %s", UIAUTOMATOR2_SERVER_TEST));
+		CommandLineResponse response = ADBUtilities.shell(deviceId, "pm list instrumentation " + UIAUTOMATOR2_SERVER);
+		String runner = response == null ? null
+				: CommonUtilities.splitLines(response.getStdOut()).stream().map(String::trim)
+						.filter(line -> line.startsWith("instrumentation:" + UIAUTOMATOR2_SERVER_TEST + "/"))
+						.map(line -> line.substring(16).split("\\s+")[0]).findFirst().orElse(null);
+		if (runner == null) {
+			log.warn("device '{}' ::: no instrumentation found for '{}'", deviceId, UIAUTOMATOR2_SERVER_TEST);
+			return false;
+		}
+		if (!shell(deviceId, String.format("nohup am instrument -w %s < /dev/null > /dev/null 2>&1 &", runner))) {
+			return false;
+		}
+		try {
+			long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(UIAUTOMATOR2_STARTUP_TIMEOUT);
+			while (!shell(deviceId, UIAUTOMATOR2_LISTENING)) {
+				if (System.currentTimeMillis() > deadline) {
+					log.warn("device '{}' ::: uiautomator2 server not started within {} seconds", deviceId,
+							UIAUTOMATOR2_STARTUP_TIMEOUT);
+					return false;
+				}
+				TimeUnit.MILLISECONDS.sleep(500);
+			}
+			return true;
+		} finally {
+			shell(deviceId, "am force-stop " + UIAUTOMATOR2_SERVER_TEST);
+			shell(deviceId, "am force-stop " + UIAUTOMATOR2_SERVER);
+		}
+	}
+
+	/**
+	 * Put back the animation scales found on the devices before they were
+	 * prepared; to call once the suite is over
+	 */
+	public static void restore() {
+		ANIMATION_SCALES_BEFORE.forEach((deviceId, scales) -> {
+			try {
+				scales.forEach((scale, value) -> shell(deviceId, "null".equals(value) || value.isEmpty()
+						? "settings delete global " + scale
+						: String.format("settings put global %s %s", scale, value)));
+				log.debug("device '{}' ::: animation scales restored to {}", deviceId, scales);
+			} catch (RuntimeException e) {
+				log.warn("device '{}' ::: unable to restore the animation scales => {}", deviceId, e.getMessage());
+			}
+		});
+		ANIMATION_SCALES_BEFORE.clear();
+	}
+
+	private static boolean shell(String deviceId, String command) {
+		CommandLineResponse response = ADBUtilities.shell(deviceId, command);
+		return response != null && response.getExitCode() == 0;
+	}
+
+	@Value
+	public static class Step {
+
+		private final String name;
+		private final boolean essential;
+		private final boolean succeeded;
+		private final long duration;
+		private final String error;
+
+		@Override
+		public String toString() {
+			return String.format("%s %s in %d ms%s", name, succeeded ? "ok" : "FAILED", duration,
+					error == null ? "" : " (" + error + ")");
+		}
+	}
+
+	/**
+	 * Outcome of the preparation of a single device
+	 */
+	public static final class Report {
+
+		private final String deviceId;
+		private final List<Step> steps = new ArrayList<>();
+		private String error;
+
+		private Report(String deviceId) {
+			this.deviceId = deviceId;
+		}
+
+		private static Report failed(String deviceId, String error) {
+			Report report = new Report(deviceId);
+			report.error = error;
+			return report;
+		}
+
+		private void run(String name, boolean essential, StepAction action) {
+			long start = System.currentTimeMillis();
+			boolean succeeded;
+			String _error = null;
+			try {
+				succeeded = action.run();
+			} catch (Exception e) {
+				succeeded = false;
+				_error = e.getMessage();
+			}
+			synchronized (this) {
+				steps.add(new Step(name, essential, succeeded, System.currentTimeMillis() - start, _error));
+			}
+		}
+
+		public String getDeviceId() {
+			return deviceId;
+		}
+
+		public synchronized List<Step> getSteps() {
+			return new ArrayList<>(steps);
+		}
+
+		/**
+		 * @return {@link Boolean} - whether the device finished in time and none of
+		 *         its essential steps failed
+		 */
+		public synchronized boolean isPrepared() {
+			return error == null && steps.stream().noneMatch(step -> step.isEssential() && !step.isSucceeded());
+		}
+
+		public synchronized long getDuration() {
+			return steps.stream().mapToLong(Step::getDuration).sum();
+		}
+
+		@Override
+		public synchronized String toString() {
+			Map<String, Object> summary = new LinkedHashMap<>();
+			summary.put("prepared", isPrepared());
+			summary.put("duration", getDuration() + " ms");
+			if (error != null) {
+				summary.put("error", error);
+			}
+			summary.put("steps", steps);
+			return String.format("device '%s' ::: preparation %s", deviceId, summary);
+		}
+	}
+
+	@FunctionalInterface
+	private interface StepAction {
+
+		boolean run() throws Exception;
+	}
+}
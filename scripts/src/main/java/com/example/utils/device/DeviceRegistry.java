@@ -0,0 +1,284 @@
+package com.example.utils.device;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.example.Platform;
+import com.example.utils.CommonUtilities;
+import com.example.utils.ConfigManager;
+import com.example.utils.device.DeviceEvent.Type;
+import com.example.utils.webdriver.ADBUtilities;
+import com.example.utils.webdriver.AdbClient;
+import com.example.utils.webdriver.IOSUtilities;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Live device inventory. Android devices are tracked through the adb server's
+ * <code>host:track-devices</code> push stream and iOS devices are re-polled
+ * every 'device.registry.ios_poll_interval' seconds. Every attach, detach and
+ * state change is applied to the {@link ADBUtilities} caches and then
+ * published, in order, to the subscribed {@link DeviceListener}s.
+ */
+@Slf4j
+public final class DeviceRegistry {
+
+	public static final String ONLINE = "device";
+
+	private static final long RECONNECT_INTERVAL = ConfigManager.getLong("device.registry.reconnect_interval", 5);
+	private static final long IOS_POLL_INTERVAL = ConfigManager.getLong("device.registry.ios_poll_interval", 30);
+
+	private static final Map<String, String> ANDROID_DEVICES = new ConcurrentHashMap<>();
+	private static final Map<String, String> IOS_DEVICES = new ConcurrentHashMap<>();
+	private static final List<DeviceListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+	private static volatile boolean running;
+	private static AndroidWatcher androidWatcher;
+	private static ScheduledExecutorService iosWatcher;
+	private static ExecutorService dispatcher;
+
+	private DeviceRegistry() {
+	}
+
+	/**
+	 * Start watching for device changes. Calling it more than once has no effect.
+	 */
+	public static synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "device-registry-events");
+			thread.setDaemon(true);
+			return thread;
+		});
+		androidWatcher = new AndroidWatcher();
+		androidWatcher.start();
+
+		if (Platform.CURRENT_PLATFORM == Platform.MACINTOSH && IOS_POLL_INTERVAL > 0) {
+			iosWatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "device-registry-ios");
+				thread.setDaemon(true);
+				return thread;
+			});
+			IOS_DEVICES.putAll(toOnline(IOSUtilities.getConnectedDevices()));
+			iosWatcher.scheduleWithFixedDelay(DeviceRegistry::pollIOSDevices, IOS_POLL_INTERVAL, IOS_POLL_INTERVAL,
+					TimeUnit.SECONDS);
+		}
+		log.info("device registry started");
+	}
+
+	/**
+	 * Stop watching for device changes and drop all the subscribers
+	 */
+	public static synchronized void stop() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		if (androidWatcher != null) {
+			androidWatcher.shutdown();
+			androidWatcher = null;
+		}
+		if (iosWatcher != null) {
+			iosWatcher.shutdownNow();
+			iosWatcher = null;
+		}
+		dispatcher.shutdownNow();
+		dispatcher = null;
+		LISTENERS.clear();
+		ANDROID_DEVICES.clear();
+		IOS_DEVICES.clear();
+		log.info("device registry stopped");
+	}
+
+	public static boolean isRunning() {
+		return running;
+	}
+
+	public static void subscribe(@NonNull DeviceListener listener) {
+		LISTENERS.add(listener);
+	}
+
+	public static void unsubscribe(@NonNull DeviceListener listener) {
+		LISTENERS.remove(listener);
+	}
+
+	/**
+	 * Check if the given device is currently able to take sessions. Always
+	 * <code>true</code> while the registry is not running.
+	 *
+	 * @param deviceId {@link String}
+	 * @return {@link Boolean}
+	 */
+	public static boolean isOnline(@NonNull String deviceId) {
+		if (!running) {
+			return true;
+		}
+		return ONLINE.equals(ANDROID_DEVICES.get(deviceId)) || ONLINE.equals(IOS_DEVICES.get(deviceId));
+	}
+
+	/**
+	 * Get the state of every known device
+	 *
+	 * @return {@link Map}&lt;{@link String}, {@link String}&gt; - device id to
+	 *         adb state
+	 */
+	public static Map<String, String> getDevices() {
+		Map<String, String> devices = new HashMap<>(ANDROID_DEVICES);
+		devices.putAll(IOS_DEVICES);
+		return Collections.unmodifiableMap(devices);
+	}
+
+	/**
+	 * Follows the <code>host:track-devices</code> stream, reconnecting every
+	 * 'device.registry.reconnect_interval' seconds while the adb server is down.
+	 * Each watcher owns its socket, so that {@link #shutdown()} can unblock the
+	 * read it is waiting on.
+	 */
+	private static final class AndroidWatcher extends Thread {
+
+		private volatile boolean stopped;
+		private volatile Socket socket;
+
+		private AndroidWatcher() {
+			super("device-registry-android");
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (!stopped) {
+				try (Socket _socket = AdbClient.getDefault().trackDevices()) {
+					socket = _socket;
+					if (stopped) {
+						return;
+					}
+					log.debug("tracking android devices through the adb server");
+					DataInputStream in = new DataInputStream(_socket.getInputStream());
+					while (!stopped) {
+						update(true, ANDROID_DEVICES, parse(AdbClient.readLengthPrefixed(in)));
+					}
+				} catch (IOException e) {
+					if (stopped) {
+						return;
+					}
+					log.warn("lost connection to the adb server, retrying in {} seconds => {}", RECONNECT_INTERVAL,
+							e.getMessage());
+				} finally {
+					socket = null;
+				}
+				try {
+					TimeUnit.SECONDS.sleep(RECONNECT_INTERVAL);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+
+		private void shutdown() {
+			stopped = true;
+			interrupt();
+			Socket _socket = socket;
+			if (_socket != null) {
+				try {
+					_socket.close();
+				} catch (IOException e) {
+					// the watcher is stopping anyway
+				}
+			}
+		}
+	}
+
+	private static void pollIOSDevices() {
+		try {
+			update(false, IOS_DEVICES, toOnline(IOSUtilities.refresh()));
+		} catch (Exception e) {
+			log.error("error occurred while polling ios devices", e);
+		}
+	}
+
+	private static Map<String, String> parse(String payload) {
+		Map<String, String> devices = new HashMap<>();
+		if (CommonUtilities.isBlank(payload)) {
+			return devices;
+		}
+		CommonUtilities.splitLines(payload.trim()).forEach(line -> {
+			String[] split = line.trim().split("\\s+");
+			if (split.length >= 2) {
+				devices.put(split[0], split[1]);
+			}
+		});
+		return devices;
+	}
+
+	private static Map<String, String> toOnline(Map<String, String> devices) {
+		Map<String, String> states = new HashMap<>();
+		devices.keySet().forEach(id -> states.put(id, ONLINE));
+		return states;
+	}
+
+	private static synchronized void update(boolean android, Map<String, String> known, Map<String, String> current) {
+		for (Map.Entry<String, String> entry : current.entrySet()) {
+			String previous = known.put(entry.getKey(), entry.getValue());
+			if (previous == null) {
+				publish(new DeviceEvent(Type.ATTACHED, entry.getKey(), android, null, entry.getValue()));
+			} else if (!previous.equals(entry.getValue())) {
+				publish(new DeviceEvent(Type.STATE_CHANGED, entry.getKey(), android, previous, entry.getValue()));
+			}
+		}
+		for (String id : known.keySet()) {
+			if (!current.containsKey(id)) {
+				String previous = known.remove(id);
+				publish(new DeviceEvent(Type.DETACHED, id, android, previous, null));
+			}
+		}
+	}
+
+	/**
+	 * Events are handed over to a single dispatcher thread, preserving their
+	 * order, so that slow subscribers never stall the track-devices stream
+	 */
+	private static void publish(DeviceEvent event) {
+		ExecutorService _dispatcher = dispatcher;
+		if (_dispatcher != null && !_dispatcher.isShutdown()) {
+			_dispatcher.execute(() -> dispatch(event));
+		}
+	}
+
+	private static void dispatch(DeviceEvent event) {
+		log.info("device '{}' ::: {} ({} -> {})", event.getDeviceId(), event.getType().toString().toLowerCase(),
+				event.getPreviousState(), event.getState());
+		if (event.isAndroid()) {
+			try {
+				if (event.isOnline()) {
+					ADBUtilities.refreshDevice(event.getDeviceId());
+				} else {
+					ADBUtilities.removeDevice(event.getDeviceId());
+				}
+			} catch (Exception e) {
+				log.error(String.format("unable to update the android device cache on %s", event), e);
+			}
+		}
+		for (DeviceListener listener : LISTENERS) {
+			try {
+				listener.onEvent(event);
+			} catch (Exception e) {
+				log.error(String.format("device listener failed on %s", event), e);
+			}
+		}
+	}
+}
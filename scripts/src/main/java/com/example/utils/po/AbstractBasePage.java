@@ -1,8 +1,6 @@
 package com.example.utils.po;
 
 import java.io.File;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import org.openqa.selenium.By;
@@ -10,14 +8,8 @@ import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.support.ui.LoadableComponent;
 
 import com.example.Channel;
-import com.example.utils.CommonUtilities;
 import com.example.utils.ConfigManager;
 import com.example.utils.webdriver.WebDriverWrapper;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import io.appium.java_client.MobileBy;
-import lombok.NonNull;
 
 public class AbstractBasePage<T extends AbstractBasePage<T>> extends LoadableComponent<T> {
 
@@ -36,90 +28,60 @@ public class AbstractBasePage<T extends AbstractBasePage<T>> extends LoadableCom
 	protected void isLoaded() throws Error {
 	}
 
-	private static final Map<Class<?>, Map<String, String>> LOCATORS = new ConcurrentHashMap<>();
+	private final String locatorFile;
 
-	protected AbstractBasePage(WebDriver driver, String deviceId, String locatorFile) {
+	/**
+	 * For pages using the locator classes generated at build time instead of a
+	 * locator file
+	 *
+	 * @param driver   {@link WebDriver}
+	 * @param deviceId {@link String}
+	 */
+	protected AbstractBasePage(WebDriver driver, String deviceId) {
 
 		this.driver = driver;
 		this.deviceId = deviceId;
 		this.utils = new WebDriverWrapper(driver, deviceId);
-
-		if (!LOCATORS.containsKey(this.getClass())) {
-			LOCATORS.put(this.getClass(), getLocators(locatorFile));
-		}
+		this.locatorFile = null;
 
 	}
 
-	private Map<String, String> getLocators(String locatorFile) {
+	protected AbstractBasePage(WebDriver driver, String deviceId, String locatorFile) {
+
+		this.driver = driver;
+		this.deviceId = deviceId;
+		this.utils = new WebDriverWrapper(driver, deviceId);
+		this.locatorFile = locatorFile;
 
-		File file = new File(ConfigManager.getString("ui.locators.dir"), locatorFile);
-		if (!file.exists()) {
-			throw new RuntimeException(String.format("file '%s' does not exists", file.getAbsolutePath()));
+		if (locatorFile == null) {
+			throw new RuntimeException(
+					String.format("no locator file given for class '%s'", this.getClass().getName()));
 		}
-		try {
-			Map<String, Map<String, String>> map = new ObjectMapper().readValue(file,
-					new TypeReference<Map<String, Map<String, String>>>() {
-					});
-			Map<String, String> props = new ConcurrentHashMap<>();
-			map.forEach((k, v) -> v.forEach((key, value) -> {
-				if (key.equalsIgnoreCase(CHANNEL.toString())) {
-					props.put(k + "." + key, value);
-				}
-			}));
-			return props;
-		} catch (Exception e) {
-			e.printStackTrace();
+		if (!LocatorRegistry.contains(locatorFile)) {
+			throw new RuntimeException(String.format("file '%s' does not exists",
+					new File(ConfigManager.getString("ui.locators.dir"), locatorFile).getAbsolutePath()));
 		}
-		return null;
+
 	}
 
 	protected By getLocator(String name, Object... args) {
-		Map<String, String> locator = LOCATORS.get(this.getClass());
-		if (locator == null) {
+		if (locatorFile == null) {
 			throw new RuntimeException(
 					String.format("unable to fetch locators for class '%s'", this.getClass().getName()));
 		}
-		String loc = locator.get(name + "." + CHANNEL.toString());
-		if (CommonUtilities.isBlank(loc)) {
-			throw new RuntimeException(
-					String.format("unable to find the locator '%s' for channel '%s'", name, CHANNEL.toString()));
-		}
-		return getBy(loc, args);
+		return LocatorRegistry.getLocator(locatorFile, name, CHANNEL, args);
 	}
 
-	private By getBy(@NonNull String str, Object... args) {
-
-		int index = str.indexOf("=");
-
-		String type = str.substring(0, index).trim().toLowerCase().replace("_", "");
-		String value = String.format(str.substring(index + 1).trim(), args);
-
-		switch (type) {
-		case "xpath":
-			return By.xpath(value);
-		case "css":
-			return By.cssSelector(value);
-		case "id":
-			return By.id(value);
-		case "tag":
-			return By.tagName(value);
-		case "class":
-			return By.className(value);
-		case "link":
-			return By.linkText(value);
-		case "partiallink":
-			return By.partialLinkText(value);
-		case "name":
-			return By.name(value);
-		case "accessibilityid":
-			return MobileBy.AccessibilityId(value);
-		case "iosnspredicate":
-			return MobileBy.iOSNsPredicateString(value);
-		case "iosclasschain":
-			return MobileBy.iOSClassChain(value);
-		default:
-			return null;
-		}
+	/**
+	 * Wait until the screen stops changing, at most the given time; prefer it
+	 * over {@link #sleep(long)} to wait for an animation
+	 *
+	 * @param maxSeconds {@link Long}
+	 * @return {@link Boolean} - <code>false</code> if the screen was still
+	 *         changing after the maximum wait
+	 */
+	protected final boolean waitForStableScreen(long maxSeconds) {
+		return utils.waitForStableScreen(maxSeconds);
 	}
 
 	protected final void sleep(long seconds) {
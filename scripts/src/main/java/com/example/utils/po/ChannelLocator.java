@@ -0,0 +1,85 @@
+package com.example.utils.po;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.openqa.selenium.By;
+
+import com.example.Channel;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * A locator defined per channel, as the classes generated at build time from
+ * the locator JSON files (see <code>gradle/locators.gradle</code>) declare
+ * them. Each <code>"strategy = value"</code> definition is compiled once, when
+ * the declaring class is initialized, so an unknown strategy fails right away.
+ */
+public final class ChannelLocator {
+
+	private static final Channel CHANNEL = Channel.getChannel();
+
+	@Getter
+	private final String name;
+	private final Map<Channel, CompiledLocator> locators;
+
+	private ChannelLocator(String name, Map<Channel, CompiledLocator> locators) {
+		this.name = name;
+		this.locators = locators;
+	}
+
+	/**
+	 * @param name {@link String} - locator name, used in error messages
+	 * @return {@link ChannelLocator} without any channel
+	 */
+	public static ChannelLocator of(@NonNull String name) {
+		return new ChannelLocator(name, Collections.emptyMap());
+	}
+
+	/**
+	 * @param channel {@link Channel}
+	 * @param locator {@link String} - <code>"strategy = value"</code>
+	 * @return a new {@link ChannelLocator} also defined for the given channel
+	 */
+	public ChannelLocator with(@NonNull Channel channel, @NonNull String locator) {
+		Map<Channel, CompiledLocator> _locators = new EnumMap<>(Channel.class);
+		_locators.putAll(locators);
+		_locators.put(channel, CompiledLocator.compile(locator, String.format("'%s.%s'", name, channel)));
+		return new ChannelLocator(name, Collections.unmodifiableMap(_locators));
+	}
+
+	public boolean isDefined(@NonNull Channel channel) {
+		return locators.containsKey(channel);
+	}
+
+	/**
+	 * Get the locator of the current channel
+	 *
+	 * @param args arguments of a parameterized locator
+	 * @return {@link By}
+	 */
+	public By get(Object... args) {
+		return get(CHANNEL, args);
+	}
+
+	/**
+	 * @param channel {@link Channel}
+	 * @param args    arguments of a parameterized locator
+	 * @return {@link By}
+	 */
+	public By get(@NonNull Channel channel, Object... args) {
+		CompiledLocator locator = locators.get(channel);
+		if (locator == null) {
+			throw new RuntimeException(
+					String.format("unable to find the locator '%s' for channel '%s'", name, channel.toString()));
+		}
+		return locator.get(args);
+	}
+
+	@Override
+	public String toString() {
+		return name + locators.keySet();
+	}
+}
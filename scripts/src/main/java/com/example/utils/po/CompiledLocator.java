@@ -0,0 +1,132 @@
+package com.example.utils.po;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openqa.selenium.By;
+
+import com.example.utils.CommonUtilities;
+
+import io.appium.java_client.MobileBy;
+
+/**
+ * A <code>"strategy = value"</code> locator definition compiled once: into a
+ * ready {@link By} when the value has no format specifier, or into a template
+ * formatting its arguments without <code>String.format</code> when it only
+ * uses <code>%s</code>. An unknown strategy fails the compilation.
+ */
+final class CompiledLocator {
+
+	private static final Map<String, Function<String, By>> STRATEGIES = getStrategies();
+	private static final Pattern SPECIFIER = Pattern.compile("%(\\d+\\$)?([-#+ 0,(<]*)?(\\d+)?(\\.\\d+)?([a-zA-Z%])");
+
+	private final Function<String, By> strategy;
+	private final String template;
+	/**
+	 * ready locator, for a template without specifier
+	 */
+	private final By by;
+	/**
+	 * literal parts and argument indexes (as {@link Integer}), for a template
+	 * only using <code>%s</code>, <code>%n$s</code> and <code>%%</code>
+	 */
+	private final List<Object> parts;
+	private final int arity;
+
+	private CompiledLocator(Function<String, By> strategy, String template) {
+		this.strategy = strategy;
+		this.template = template;
+		List<Object> _parts = new ArrayList<>();
+		StringBuilder literal = new StringBuilder();
+		Matcher matcher = SPECIFIER.matcher(template);
+		int position = 0;
+		int next = 0;
+		int _arity = 0;
+		boolean simple = true;
+		while (matcher.find()) {
+			literal.append(template, position, matcher.start());
+			position = matcher.end();
+			String conversion = matcher.group(5);
+			boolean plain = CommonUtilities.isBlank(matcher.group(2)) && matcher.group(3) == null
+					&& matcher.group(4) == null;
+			if ("%".equals(conversion) && matcher.group(1) == null && plain) {
+				literal.append('%');
+			} else if ("s".equals(conversion) && plain) {
+				int argument = matcher.group(1) == null ? next++
+						: Integer.parseInt(matcher.group(1).substring(0, matcher.group(1).length() - 1)) - 1;
+				if (literal.length() > 0) {
+					_parts.add(literal.toString());
+					literal.setLength(0);
+				}
+				_parts.add(argument);
+				_arity = Math.max(_arity, argument + 1);
+			} else {
+				simple = false;
+			}
+		}
+		literal.append(template.substring(position));
+		if (literal.length() > 0) {
+			_parts.add(literal.toString());
+		}
+		// anything else than %s and %% goes through String.format
+		this.parts = simple ? _parts : null;
+		this.arity = _arity;
+		this.by = simple && _arity == 0 ? strategy.apply(format()) : null;
+	}
+
+	private String format(Object... args) {
+		if (parts == null) {
+			return String.format(template, args);
+		}
+		if (args.length < arity) {
+			throw new IllegalArgumentException(String.format("locator '%s' expects %d arguments, got %d", template,
+					arity, args.length));
+		}
+		StringBuilder value = new StringBuilder(template.length() + 16 * arity);
+		for (Object part : parts) {
+			value.append(part instanceof Integer ? String.valueOf(args[(Integer) part]) : (String) part);
+		}
+		return value.toString();
+	}
+
+	By get(Object... args) {
+		return by != null ? by : strategy.apply(format(args));
+	}
+
+	private static Map<String, Function<String, By>> getStrategies() {
+		Map<String, Function<String, By>> strategies = new HashMap<>();
+		strategies.put("xpath", By::xpath);
+		strategies.put("css", By::cssSelector);
+		strategies.put("id", By::id);
+		strategies.put("tag", By::tagName);
+		strategies.put("class", By::className);
+		strategies.put("link", By::linkText);
+		strategies.put("partiallink", By::partialLinkText);
+		strategies.put("name", By::name);
+		strategies.put("accessibilityid", MobileBy::AccessibilityId);
+		strategies.put("iosnspredicate", MobileBy::iOSNsPredicateString);
+		strategies.put("iosclasschain", MobileBy::iOSClassChain);
+		strategies.put("androiduiautomator", MobileBy::AndroidUIAutomator);
+		return Collections.unmodifiableMap(strategies);
+	}
+
+	static CompiledLocator compile(String str, String description) {
+		int index = str.indexOf('=');
+		if (index < 0) {
+			throw new RuntimeException(String.format("locator %s must be 'strategy = value'", description));
+		}
+		String type = str.substring(0, index).trim().toLowerCase().replace("_", "");
+		Function<String, By> strategy = STRATEGIES.get(type);
+		if (strategy == null) {
+			throw new RuntimeException(String.format("unknown locator strategy '%s' for locator %s, expected one of %s",
+					type, description, STRATEGIES.keySet()));
+		}
+		return new CompiledLocator(strategy, str.substring(index + 1).trim());
+	}
+}
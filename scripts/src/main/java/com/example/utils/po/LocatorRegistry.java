@@ -0,0 +1,143 @@
+package com.example.utils.po;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openqa.selenium.By;
+
+import com.example.Channel;
+import com.example.utils.CommonUtilities;
+import com.example.utils.ConfigManager;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Locators of every JSON file under 'ui.locators.dir', loaded once when the
+ * first page using a locator file is created. Each entry maps a locator name
+ * to a <code>"strategy = value"</code> string per channel; entries are
+ * compiled when loaded (see {@link CompiledLocator}), so an unknown strategy
+ * fails the load.
+ */
+@Slf4j
+public final class LocatorRegistry {
+
+	private static final Map<String, Map<String, Map<Channel, CompiledLocator>>> FILES = load();
+
+	private LocatorRegistry() {
+	}
+
+	/**
+	 * @return {@link Set}&lt;{@link String}&gt; - loaded files, relative to
+	 *         'ui.locators.dir'
+	 */
+	public static Set<String> getFiles() {
+		return FILES.keySet();
+	}
+
+	/**
+	 * @param file {@link String} - path relative to 'ui.locators.dir'
+	 * @return {@link Boolean}
+	 */
+	public static boolean contains(@NonNull String file) {
+		return FILES.containsKey(normalize(file));
+	}
+
+	/**
+	 * Get a locator
+	 *
+	 * @param file    {@link String} - path relative to 'ui.locators.dir'
+	 * @param name    {@link String}
+	 * @param channel {@link Channel}
+	 * @param args    arguments of a parameterized locator
+	 * @return {@link By}
+	 */
+	public static By getLocator(@NonNull String file, @NonNull String name, @NonNull Channel channel,
+			Object... args) {
+		Map<String, Map<Channel, CompiledLocator>> locators = FILES.get(normalize(file));
+		if (locators == null) {
+			throw new RuntimeException(String.format("unable to find locator file '%s' in '%s'", file,
+					ConfigManager.getString("ui.locators.dir")));
+		}
+		Map<Channel, CompiledLocator> channels = locators.get(name);
+		CompiledLocator locator = channels == null ? null : channels.get(channel);
+		if (locator == null) {
+			throw new RuntimeException(
+					String.format("unable to find the locator '%s' for channel '%s'", name, channel.toString()));
+		}
+		return locator.get(args);
+	}
+
+	private static String normalize(String file) {
+		return file.trim().replace('\\', '/');
+	}
+
+	private static Map<String, Map<String, Map<Channel, CompiledLocator>>> load() {
+		long start = System.currentTimeMillis();
+		File directory = new File(ConfigManager.getString("ui.locators.dir"));
+		if (!directory.isDirectory()) {
+			log.warn("locators directory '{}' does not exist", directory.getAbsolutePath());
+			return Collections.emptyMap();
+		}
+		List<Path> paths;
+		try (Stream<Path> stream = Files.walk(directory.toPath())) {
+			paths = stream.filter(path -> path.toString().endsWith(".json") && Files.isRegularFile(path))
+					.collect(Collectors.toList());
+		} catch (IOException e) {
+			throw new RuntimeException(String.format("unable to list locator files in '%s'", directory), e);
+		}
+		ObjectMapper mapper = new ObjectMapper();
+		Map<String, Map<String, Map<Channel, CompiledLocator>>> files = new HashMap<>();
+		int count = 0;
+		for (Path path : paths) {
+			String file = normalize(directory.toPath().relativize(path).toString());
+			Map<String, Map<String, String>> entries;
+			try {
+				entries = mapper.readValue(path.toFile(), new TypeReference<Map<String, Map<String, String>>>() {
+				});
+			} catch (IOException e) {
+				throw new RuntimeException(String.format("unable to parse locator file '%s'", path), e);
+			}
+			Map<String, Map<Channel, CompiledLocator>> locators = new HashMap<>();
+			for (Map.Entry<String, Map<String, String>> entry : entries.entrySet()) {
+				Map<Channel, CompiledLocator> channels = new EnumMap<>(Channel.class);
+				entry.getValue().forEach((key, value) -> {
+					Channel channel = getChannel(key);
+					if (channel == null) {
+						log.warn("unknown channel '{}' for locator '{}' in '{}'", key, entry.getKey(), file);
+					} else if (!CommonUtilities.isBlank(value)) {
+						channels.put(channel, CompiledLocator.compile(value,
+								String.format("'%s.%s' in '%s'", entry.getKey(), key, file)));
+					}
+				});
+				locators.put(entry.getKey(), Collections.unmodifiableMap(channels));
+				count += channels.size();
+			}
+			files.put(file, Collections.unmodifiableMap(locators));
+		}
+		log.debug("compiled {} locators from {} files in {} ms", count, files.size(),
+				System.currentTimeMillis() - start);
+		return Collections.unmodifiableMap(files);
+	}
+
+	private static Channel getChannel(String name) {
+		for (Channel channel : Channel.values()) {
+			if (channel.toString().equalsIgnoreCase(name.trim())) {
+				return channel;
+			}
+		}
+		return null;
+	}
+}
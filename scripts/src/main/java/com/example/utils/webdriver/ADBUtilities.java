@@ -7,7 +7,9 @@ import static com.example.utils.CommonUtilities.isBlank;
 import static com.example.utils.CommonUtilities.splitLines;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -25,6 +27,8 @@ public final class ADBUtilities {
 
 	private static final Map<String, String> CONNECTED_ANDROID_DEVICES = new ConcurrentHashMap<>();
 	private static String ADB_EXECUTABLE_PATH = null;
+	private static final boolean USE_ADB_CLIENT = ConfigManager.getBoolean("adb.client.enabled", true);
+	private static final boolean USE_PERSISTENT_SHELL = ConfigManager.getBoolean("adb.shell.persistent", true);
 
 	private ADBUtilities() {
 	}
@@ -73,8 +77,7 @@ public final class ADBUtilities {
 	 */
 	public static String getDeviceProperty(final String deviceId, @NonNull final String property) {
 
-		String[] args = getArguments(deviceId, String.format("shell getprop %s", property.trim()));
-		CommandLineResponse response = exec(String.join(" ", args));
+		CommandLineResponse response = shell(deviceId, String.format("getprop %s", property.trim()));
 		if (response == null || isBlank(response.getStdOut())) {
 			return null;
 		}
@@ -101,8 +104,7 @@ public final class ADBUtilities {
 	 * @return {@link Boolean}
 	 */
 	public static boolean clearUserData(final String deviceId, @NonNull final String appPackage) {
-		String[] args = getArguments(deviceId, String.format("shell pm clear %s", appPackage));
-		CommandLineResponse response = exec(String.join(" ", args));
+		CommandLineResponse response = shell(deviceId, String.format("pm clear %s", appPackage));
 		if (response != null && response.getExitCode() == 0) {
 			return response.getStdOut().toLowerCase().contains("success");
 		}
@@ -129,10 +131,9 @@ public final class ADBUtilities {
 	 * @return {@link Boolean}
 	 */
 	public static boolean isAppInstalled(final String deviceId, @NonNull final String appPackage) {
-		String[] args = getArguments(deviceId, String.format("shell pm path '%s' | wc -l", appPackage));
-		CommandLineResponse response = exec(String.join(" ", args));
+		CommandLineResponse response = shell(deviceId, String.format("pm path '%s' | wc -l", appPackage));
 		if (response != null && response.getExitCode() == 0) {
-			return 1 == Integer.parseInt(response.getStdOut());
+			return 1 == Integer.parseInt(response.getStdOut().trim());
 		}
 		return false;
 	}
@@ -155,9 +156,8 @@ public final class ADBUtilities {
 	 * @return {@link String}
 	 */
 	public static String getAppVersion(final String deviceId, @NonNull final String appPackage) {
-		String[] args = getArguments(deviceId,
-				String.format("shell dumpsys package %s | grep -iE '(versionName=)([0-9\\.]+)'", appPackage));
-		CommandLineResponse response = exec(String.join(" ", args));
+		CommandLineResponse response = shell(deviceId,
+				String.format("dumpsys package %s | grep -iE '(versionName=)([0-9\\.]+)'", appPackage));
 		if (response != null && response.getExitCode() == 0) {
 			String[] split = response.getStdOut().split("=");
 			return split != null && split.length >= 2 ? split[1].trim().replaceAll("[^\\d\\.]+", "") : null;
@@ -170,7 +170,38 @@ public final class ADBUtilities {
 	}
 
 	public static void killApp(final String deviceId, @NonNull final String appPackage) {
-		exec(String.join(" ", getArguments(deviceId, String.format("am force-stop %s", appPackage))));
+		shell(deviceId, String.format("am force-stop %s", appPackage));
+	}
+
+	/**
+	 * Run the given command on the device shell. The command is sent straight to
+	 * the adb server socket when 'adb.client.enabled' is set, otherwise (or if the
+	 * server is not reachable) it is pipelined through the device's
+	 * {@link AdbShellSession} when 'adb.shell.persistent' is set, falling back to
+	 * spawning adb. A path is only left for the next one when the command could
+	 * not be sent; once sent, a failure (e.g. a timeout) is returned as is, since
+	 * the command may have run.
+	 *
+	 * @param deviceId {@link String}
+	 * @param command  {@link String}
+	 * @return {@link CommandLineResponse}
+	 */
+	public static CommandLineResponse shell(final String deviceId, @NonNull final String command) {
+		if (USE_ADB_CLIENT) {
+			try {
+				return AdbClient.getDefault().shell(deviceId, command);
+			} catch (IOException e) {
+				log.debug("device '{}' ::: unable to run '{}' through the adb server => {}", deviceId, command,
+						e.getMessage());
+			}
+		}
+		if (!isBlank(deviceId) && USE_PERSISTENT_SHELL) {
+			CommandLineResponse response = AdbShellSession.forDevice(deviceId).exec(command);
+			if (response != null) {
+				return response;
+			}
+		}
+		return exec(String.join(" ", getArguments(deviceId, "shell", command)));
 	}
 
 	/**
@@ -243,13 +274,9 @@ public final class ADBUtilities {
 		if (!CONNECTED_ANDROID_DEVICES.isEmpty()) {
 			return CONNECTED_ANDROID_DEVICES;
 		}
-		CommandLineResponse response = exec(String.join(" ", getArguments(null, "devices -l")));
-		if (response == null || isBlank(response.getStdOut())) {
-			return CONNECTED_ANDROID_DEVICES;
-		}
-		List<String> devices = splitLines(response.getStdOut());
-		if (devices != null && devices.size() > 1) {
-			devices.subList(1, devices.size()).forEach(str -> {
+		List<String> devices = getDeviceListing();
+		if (devices != null && !devices.isEmpty()) {
+			devices.forEach(str -> {
 				String[] split = str.split("\\s{2,}");
 				if (split != null && split.length == 2) {
 					List<String> tmp = getMatches(split[1], "\\b(?<=model:).*?(?=\\s+)\\b");
@@ -268,6 +295,50 @@ public final class ADBUtilities {
 		return CONNECTED_ANDROID_DEVICES;
 	}
 
+	/**
+	 * Add (or update) the given device in the connected devices cache. Used when
+	 * a device is attached or comes back online mid-suite.
+	 *
+	 * @param deviceId {@link String}
+	 */
+	public static void refreshDevice(@NonNull final String deviceId) {
+		String model = getDeviceProperty(deviceId, "ro.product.model");
+		CONNECTED_ANDROID_DEVICES.put(deviceId.trim(), isBlank(model) ? deviceId.trim() : model);
+	}
+
+	/**
+	 * Drop the given device from the connected devices cache along with its shell
+	 * session. Used when a device is detached or goes offline mid-suite.
+	 *
+	 * @param deviceId {@link String}
+	 */
+	public static void removeDevice(@NonNull final String deviceId) {
+		CONNECTED_ANDROID_DEVICES.remove(deviceId.trim());
+		AdbShellSession.close(deviceId);
+	}
+
+	/**
+	 * Get the lines of <code>adb devices -l</code> without the header, preferring
+	 * the adb server socket over spawning adb
+	 *
+	 * @return {@link List}&lt;{@link String}&gt;
+	 */
+	private static List<String> getDeviceListing() {
+		if (USE_ADB_CLIENT) {
+			try {
+				return AdbClient.getDefault().getDevices();
+			} catch (IOException e) {
+				log.debug("unable to list devices through the adb server => {}", e.getMessage());
+			}
+		}
+		CommandLineResponse response = exec(String.join(" ", getArguments(null, "devices -l")));
+		if (response == null || isBlank(response.getStdOut())) {
+			return Collections.emptyList();
+		}
+		List<String> lines = splitLines(response.getStdOut());
+		return lines.size() > 1 ? lines.subList(1, lines.size()) : Collections.emptyList();
+	}
+
 	/**
 	 * Uninstall android app from device
 	 *
@@ -291,7 +362,7 @@ public final class ADBUtilities {
 			log.error("appPackage should not be empty or null!");
 			return false;
 		}
-		CommandLineResponse response = exec(String.join(" ", getArguments(deviceId, "uninstall " + appPackage.trim())));
+		CommandLineResponse response = shell(deviceId, "pm uninstall " + appPackage.trim());
 		boolean result = response != null && response.getStdOut().toLowerCase().contains("success");
 		log.info("uninstalling app package '{}'{} successful ? {}", appPackage.trim(),
 				isBlank(deviceId) ? "" : " from device '" + deviceId.trim() + "'", result);
@@ -346,7 +417,7 @@ public final class ADBUtilities {
 	 * @param deviceId {@link String}
 	 */
 	public static void putAppToBackground(String deviceId) {
-		exec(String.join(" ", getArguments(deviceId, "shell input keyevent 3")));
+		shell(deviceId, "input keyevent 3");
 	}
 
 	/**
@@ -365,8 +436,7 @@ public final class ADBUtilities {
 	 * @param appPackage {@link String}
 	 */
 	public static void resumeApp(String deviceId, String appPackage) {
-		exec(String.join(" ", getArguments(deviceId,
-				String.format("shell monkey -p %s -c android.intent.category.LAUNCHER 1", appPackage))));
+		shell(deviceId, String.format("monkey -p %s -c android.intent.category.LAUNCHER 1", appPackage));
 	}
 
 	/**
@@ -382,6 +452,6 @@ public final class ADBUtilities {
 	 * @param deviceId {@link String}
 	 */
 	public static void hideKeyboard(String deviceId) {
-		exec(String.join(" ", getArguments(deviceId, "shell input keyevent 111")));
+		shell(deviceId, "input keyevent 111");
 	}
 }
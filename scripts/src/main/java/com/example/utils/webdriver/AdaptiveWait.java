@@ -0,0 +1,190 @@
+package com.example.utils.webdriver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openqa.selenium.NotFoundException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+
+import com.example.utils.ConfigManager;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Waits for an {@link ExpectedCondition} with an adaptive polling schedule
+ * instead of a fixed interval: the condition is probed right away, then after
+ * a delay growing exponentially from 'ui.wait.min_delay' up to
+ * 'ui.wait.max_delay' milliseconds, with a random jitter of 'ui.wait.jitter'
+ * so that parallel sessions do not poll in lockstep. The time each condition
+ * took to be met is learned (moving average, per condition description such
+ * as the locator) and the first delay after a failed probe is aimed at it.
+ * Learned latencies are kept in 'ui.wait.latency.file' across runs.
+ */
+@Slf4j
+public final class AdaptiveWait {
+
+	private static final long MIN_DELAY = Math.max(1, ConfigManager.getLong("ui.wait.min_delay", 50));
+	private static final long MAX_DELAY = Math.max(MIN_DELAY, ConfigManager.getLong("ui.wait.max_delay", 1000));
+	private static final double JITTER = Math.min(1, Math.max(0,
+			Double.parseDouble(ConfigManager.getString("ui.wait.jitter", "0.2"))));
+	private static final boolean LEARN = ConfigManager.getBoolean("ui.wait.learn", true);
+	private static final File LATENCY_FILE = new File(
+			ConfigManager.getString("ui.wait.latency.file", "build/wait-latency.json"));
+	private static final int BACKOFF_FACTOR = 2;
+	// weight of the latest observation in the learned latency
+	private static final double LEARNING_RATE = 0.3;
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final Map<String, Long> LATENCIES = new ConcurrentHashMap<>(load());
+
+	private AdaptiveWait() {
+	}
+
+	public static boolean isEnabled() {
+		return ConfigManager.getBoolean("ui.wait.adaptive", true);
+	}
+
+	/**
+	 * Wait until the given condition returns neither <code>null</code> nor
+	 * <code>false</code>, ignoring {@link NotFoundException} and
+	 * {@link StaleElementReferenceException} while polling
+	 *
+	 * @param <T>       type returned by the condition
+	 * @param driver    {@link WebDriver}
+	 * @param condition {@link ExpectedCondition}
+	 * @param timeout   {@link Long} - in seconds
+	 * @return the value returned by the condition
+	 * @throws TimeoutException if the condition is not met in time; the message
+	 *                          tells how many polls were spent
+	 */
+	public static <T> T until(@NonNull WebDriver driver, @NonNull ExpectedCondition<T> condition, long timeout) {
+		String key = getKey(condition);
+		Long learned = key == null ? null : LATENCIES.get(key);
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.SECONDS.toNanos(timeout);
+		long delay = MIN_DELAY;
+		int polls = 0;
+		RuntimeException lastException = null;
+		while (true) {
+			polls++;
+			try {
+				T value = condition.apply(driver);
+				if (value != null && !Boolean.FALSE.equals(value)) {
+					long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+					learn(key, elapsed);
+					log.trace("'{}' met after {} polls in {} ms", condition, polls, elapsed);
+					return value;
+				}
+			} catch (NotFoundException | StaleElementReferenceException e) {
+				lastException = e;
+			}
+			long now = System.nanoTime();
+			if (now >= deadline) {
+				break;
+			}
+			long sleep = delay;
+			if (polls == 1 && learned != null) {
+				// aim the second probe at the time this condition usually takes
+				sleep = Math.max(MIN_DELAY, learned - TimeUnit.NANOSECONDS.toMillis(now - start));
+			} else {
+				delay = Math.min(MAX_DELAY, delay * BACKOFF_FACTOR);
+			}
+			sleep = Math.min(jitter(Math.min(sleep, MAX_DELAY)), TimeUnit.NANOSECONDS.toMillis(deadline - now) + 1);
+			try {
+				Thread.sleep(sleep);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new WebDriverException(e);
+			}
+		}
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		log.debug("'{}' not met after {} polls in {} ms", condition, polls, elapsed);
+		throw new TimeoutException(String.format("Expected condition failed: waiting for %s (tried for %d second(s) "
+				+ "with %d polls in %d ms)", condition, timeout, polls, elapsed), lastException);
+	}
+
+	/**
+	 * Get the learned time, in milliseconds, the given condition takes to be met
+	 *
+	 * @param condition {@link ExpectedCondition}
+	 * @return {@link Long} or <code>null</code> if nothing was learned yet
+	 */
+	public static Long getLearnedLatency(@NonNull ExpectedCondition<?> condition) {
+		String key = getKey(condition);
+		return key == null ? null : LATENCIES.get(key);
+	}
+
+	private static long jitter(long delay) {
+		if (JITTER == 0) {
+			return delay;
+		}
+		double factor = 1 + JITTER * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+		return Math.max(1, Math.round(delay * factor));
+	}
+
+	private static void learn(String key, long elapsed) {
+		if (key != null && LEARN) {
+			LATENCIES.merge(key, elapsed,
+					(previous, latest) -> Math.round(previous * (1 - LEARNING_RATE) + latest * LEARNING_RATE));
+		}
+	}
+
+	/**
+	 * The conditions of {@link org.openqa.selenium.support.ui.ExpectedConditions}
+	 * describe themselves, locator included; lambdas and other conditions without
+	 * a description are not learned
+	 */
+	private static String getKey(ExpectedCondition<?> condition) {
+		String description = condition.toString();
+		String identity = condition.getClass().getName() + "@" + Integer.toHexString(condition.hashCode());
+		return description == null || description.equals(identity) ? null : description;
+	}
+
+	private static Map<String, Long> load() {
+		if (!LEARN || !LATENCY_FILE.exists()) {
+			return new ConcurrentHashMap<>();
+		}
+		try {
+			return MAPPER.readValue(LATENCY_FILE, new TypeReference<Map<String, Long>>() {
+			});
+		} catch (IOException e) {
+			log.warn("unable to read wait latencies '{}', starting empty => {}", LATENCY_FILE, e.getMessage());
+			return new ConcurrentHashMap<>();
+		}
+	}
+
+	/**
+	 * Save the learned latencies for the next runs
+	 */
+	public static synchronized void save() {
+		if (!LEARN || LATENCIES.isEmpty()) {
+			return;
+		}
+		try {
+			File parent = LATENCY_FILE.getAbsoluteFile().getParentFile();
+			if (parent != null && !parent.exists()) {
+				parent.mkdirs();
+			}
+			File temp = new File(parent, LATENCY_FILE.getName() + ".tmp");
+			MAPPER.writerWithDefaultPrettyPrinter().writeValue(temp, new TreeMap<>(LATENCIES));
+			Files.move(temp.toPath(), LATENCY_FILE.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			log.warn("unable to write wait latencies '{}' => {}", LATENCY_FILE, e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,394 @@
+package com.example.utils.webdriver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.example.utils.CommandLineResponse;
+import com.example.utils.CommonUtilities;
+import com.example.utils.ConfigManager;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Minimal client for the adb server's TCP protocol (by default on
+ * localhost:5037). It speaks the host services (<code>host:devices-l</code>,
+ * <code>host:track-devices</code>, <code>host:transport:&lt;serial&gt;</code>)
+ * and the local services (<code>shell:</code>, <code>exec:</code>,
+ * <code>sync:</code>) directly over a socket, so no adb process has to be
+ * spawned per command.
+ */
+@Slf4j
+public final class AdbClient {
+
+	private static final String OKAY = "OKAY";
+	private static final String FAIL = "FAIL";
+	private static final String EXIT_CODE_MARKER = "__ADB_CLIENT_EXIT_CODE__";
+	private static final int SYNC_MAX_CHUNK = 64 * 1024;
+
+	private static final AdbClient DEFAULT = new AdbClient(ConfigManager.getString("adb.server.host", "127.0.0.1"),
+			ConfigManager.getInt("adb.server.port", 5037));
+
+	@Getter
+	private final String host;
+	@Getter
+	private final int port;
+	private final int timeout;
+
+	public AdbClient(@NonNull String host, int port) {
+		this.host = host;
+		this.port = port;
+		this.timeout = (int) TimeUnit.SECONDS.toMillis(ConfigManager.getLong("adb.server.timeout", 60));
+	}
+
+	/**
+	 * Get the client for the adb server configured through 'adb.server.host' and
+	 * 'adb.server.port'
+	 *
+	 * @return {@link AdbClient}
+	 */
+	public static AdbClient getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Check whether the adb server is accepting connections
+	 *
+	 * @return {@link Boolean}
+	 */
+	public boolean isServerRunning() {
+		try (Socket socket = connect()) {
+			send(socket, "host:version");
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Equivalent of <code>adb devices -l</code> without the header line
+	 *
+	 * @return {@link List}&lt;{@link String}&gt; - one line per device
+	 * @throws IOException if the adb server is not reachable
+	 */
+	public List<String> getDevices() throws IOException {
+		try (Socket socket = connect()) {
+			send(socket, "host:devices-l");
+			String payload = readLengthPrefixed(new DataInputStream(socket.getInputStream()));
+			return CommonUtilities.splitLines(payload.trim());
+		}
+	}
+
+	/**
+	 * Open the <code>host:track-devices</code> stream. The adb server pushes the
+	 * full device list (same format as <code>adb devices</code>) every time a
+	 * device is attached, detached or changes state; use
+	 * {@link #readLengthPrefixed(DataInputStream)} to read each update.
+	 *
+	 * @return {@link Socket} - caller is responsible for closing it
+	 * @throws IOException if the adb server is not reachable
+	 */
+	public Socket trackDevices() throws IOException {
+		Socket socket = connect();
+		try {
+			socket.setSoTimeout(0);
+			send(socket, "host:track-devices");
+			return socket;
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Run the given command through the <code>shell:</code> service. Once the
+	 * command is sent it may have run, so later failures (the device rejecting
+	 * it, a read timeout, a dropped connection) are not thrown but reported as a
+	 * response with exit code -1, keeping callers from running it again.
+	 *
+	 * @param serial  {@link String} - <code>null</code> to target the only
+	 *                connected device
+	 * @param command {@link String}
+	 * @return {@link CommandLineResponse}
+	 * @throws IOException if the adb server or the device is not reachable, i.e.
+	 *                     before the command is sent
+	 */
+	public CommandLineResponse shell(final String serial, @NonNull String command) throws IOException {
+		String service = String.format("shell:{ %s\n} 2>&1; echo \"%s:$?\"", command.trim(), EXIT_CODE_MARKER);
+		CommandLineResponse response = new CommandLineResponse();
+		response.setErrOut("");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Socket socket = connect();
+		try {
+			transport(socket, serial);
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+		try {
+			send(socket, service);
+			readAll(socket.getInputStream(), out);
+		} catch (IOException e) {
+			log.error("device '{}' ::: shell command '{}' failed after being sent => {}", serial, command,
+					e.getMessage());
+			response.setStdOut(new String(out.toByteArray(), StandardCharsets.UTF_8).trim());
+			response.setErrOut(String.valueOf(e.getMessage()));
+			response.setExitCode(-1);
+			return response;
+		} finally {
+			closeQuietly(socket);
+		}
+		String output = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		int index = output.lastIndexOf(EXIT_CODE_MARKER + ":");
+		if (index < 0) {
+			response.setStdOut(output.trim());
+			response.setExitCode(-1);
+		} else {
+			response.setStdOut(output.substring(0, index).trim());
+			response.setExitCode(parseExitCode(output.substring(index + EXIT_CODE_MARKER.length() + 1)));
+		}
+		return response;
+	}
+
+	/**
+	 * Run the given command through the binary-safe <code>exec:</code> service
+	 * (equivalent of <code>adb exec-out</code>).
+	 *
+	 * @param serial  {@link String}
+	 * @param command {@link String}
+	 * @return byte[] - raw stdout of the command
+	 * @throws IOException if the adb server or the device is not reachable
+	 */
+	public byte[] execOut(final String serial, @NonNull String command) throws IOException {
+		return execute(serial, "exec:" + command.trim());
+	}
+
+	/**
+	 * Open the binary-safe <code>exec:</code> service and return its stdout as a
+	 * stream. Closing the stream closes the connection.
+	 *
+	 * @param serial  {@link String}
+	 * @param command {@link String}
+	 * @return {@link InputStream}
+	 * @throws IOException if the adb server or the device is not reachable
+	 */
+	public InputStream openExecOut(final String serial, @NonNull String command) throws IOException {
+		Socket socket = connect();
+		try {
+			transport(socket, serial);
+			send(socket, "exec:" + command.trim());
+			return socket.getInputStream();
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Pull a file from the device through the <code>sync:</code> service.
+	 *
+	 * @param serial {@link String}
+	 * @param remote {@link String} - path on the device
+	 * @param local  {@link File}
+	 * @throws IOException if the transfer fails
+	 */
+	public void pull(final String serial, @NonNull String remote, @NonNull File local) throws IOException {
+		if (local.getParentFile() != null && !local.getParentFile().exists()) {
+			local.getParentFile().mkdirs();
+		}
+		try (Socket socket = openSync(serial); OutputStream file = new FileOutputStream(local)) {
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			OutputStream out = socket.getOutputStream();
+			writeSyncRequest(out, "RECV", remote.getBytes(StandardCharsets.UTF_8));
+			byte[] buffer = new byte[SYNC_MAX_CHUNK];
+			while (true) {
+				String id = readId(in);
+				int length = readIntLE(in);
+				if ("DATA".equals(id)) {
+					int remaining = length;
+					while (remaining > 0) {
+						int read = in.read(buffer, 0, Math.min(buffer.length, remaining));
+						if (read < 0) {
+							throw new EOFException("unexpected end of sync stream while pulling " + remote);
+						}
+						file.write(buffer, 0, read);
+						remaining -= read;
+					}
+				} else if ("DONE".equals(id)) {
+					break;
+				} else {
+					throw new IOException(String.format("unable to pull '%s' => %s", remote, readString(in, length)));
+				}
+			}
+			writeSyncRequest(out, "QUIT", new byte[0]);
+		}
+	}
+
+	/**
+	 * Push a file to the device through the <code>sync:</code> service.
+	 *
+	 * @param serial {@link String}
+	 * @param local  {@link File}
+	 * @param remote {@link String} - path on the device
+	 * @param mode   {@link Integer} - unix file mode, e.g. 0644
+	 * @throws IOException if the transfer fails
+	 */
+	public void push(final String serial, @NonNull File local, @NonNull String remote, int mode)
+			throws IOException {
+		try (Socket socket = openSync(serial); InputStream file = new FileInputStream(local)) {
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			OutputStream out = socket.getOutputStream();
+			writeSyncRequest(out, "SEND", String.format("%s,%d", remote, mode).getBytes(StandardCharsets.UTF_8));
+			byte[] buffer = new byte[SYNC_MAX_CHUNK];
+			int read;
+			while ((read = file.read(buffer)) > 0) {
+				out.write(syncHeader("DATA", read));
+				out.write(buffer, 0, read);
+			}
+			out.write(syncHeader("DONE", (int) TimeUnit.MILLISECONDS.toSeconds(local.lastModified())));
+			out.flush();
+			String id = readId(in);
+			int length = readIntLE(in);
+			if (!OKAY.equals(id)) {
+				throw new IOException(String.format("unable to push '%s' => %s", local, readString(in, length)));
+			}
+			writeSyncRequest(out, "QUIT", new byte[0]);
+		}
+	}
+
+	private Socket openSync(final String serial) throws IOException {
+		Socket socket = connect();
+		try {
+			transport(socket, serial);
+			send(socket, "sync:");
+			return socket;
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
+	private byte[] execute(final String serial, String service) throws IOException {
+		try (Socket socket = connect()) {
+			transport(socket, serial);
+			send(socket, service);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			readAll(socket.getInputStream(), out);
+			return out.toByteArray();
+		}
+	}
+
+	private static void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// the response is complete
+		}
+	}
+
+	private static void readAll(InputStream in, ByteArrayOutputStream out) throws IOException {
+		byte[] buffer = new byte[16 * 1024];
+		int read;
+		while ((read = in.read(buffer)) > 0) {
+			out.write(buffer, 0, read);
+		}
+	}
+
+	private void transport(Socket socket, final String serial) throws IOException {
+		send(socket, CommonUtilities.isBlank(serial) ? "host:transport-any" : "host:transport:" + serial.trim());
+	}
+
+	private Socket connect() throws IOException {
+		Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(host, port), timeout);
+			socket.setSoTimeout(timeout);
+			return socket;
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Send a length-prefixed request and consume the OKAY/FAIL status
+	 */
+	private static void send(Socket socket, String request) throws IOException {
+		byte[] payload = request.getBytes(StandardCharsets.UTF_8);
+		OutputStream out = socket.getOutputStream();
+		out.write(String.format("%04x", payload.length).getBytes(StandardCharsets.US_ASCII));
+		out.write(payload);
+		out.flush();
+
+		DataInputStream in = new DataInputStream(socket.getInputStream());
+		String status = readId(in);
+		if (FAIL.equals(status)) {
+			throw new IOException(String.format("adb request '%s' failed => %s", request, readLengthPrefixed(in)));
+		}
+		if (!OKAY.equals(status)) {
+			throw new IOException(String.format("adb request '%s' returned unexpected status '%s'", request, status));
+		}
+	}
+
+	/**
+	 * Read a message prefixed with its length as 4 hexadecimal characters
+	 *
+	 * @param in {@link DataInputStream}
+	 * @return {@link String}
+	 * @throws IOException on end of stream
+	 */
+	public static String readLengthPrefixed(DataInputStream in) throws IOException {
+		int length = Integer.parseInt(readString(in, 4), 16);
+		return readString(in, length);
+	}
+
+	private static String readId(DataInputStream in) throws IOException {
+		return readString(in, 4);
+	}
+
+	private static String readString(DataInputStream in, int length) throws IOException {
+		byte[] data = new byte[length];
+		in.readFully(data);
+		return new String(data, StandardCharsets.UTF_8);
+	}
+
+	private static int readIntLE(DataInputStream in) throws IOException {
+		byte[] data = new byte[4];
+		in.readFully(data);
+		return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).getInt();
+	}
+
+	private static void writeSyncRequest(OutputStream out, String id, byte[] payload) throws IOException {
+		out.write(syncHeader(id, payload.length));
+		out.write(payload);
+		out.flush();
+	}
+
+	private static byte[] syncHeader(String id, int value) {
+		return ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).put(id.getBytes(StandardCharsets.US_ASCII))
+				.putInt(value).array();
+	}
+
+	private static int parseExitCode(String str) {
+		try {
+			return Integer.parseInt(str.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,281 @@
+package com.example.utils.webdriver;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.example.utils.CommandLineExecutor;
+import com.example.utils.CommandLineResponse;
+import com.example.utils.CommonUtilities;
+import com.example.utils.ConfigManager;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A long-lived <code>adb -s &lt;id&gt; shell</code> process per device.
+ * Commands are pipelined over stdin and every response is terminated by a
+ * unique sentinel line carrying the exit code of the command, so the cost of
+ * spawning adb is paid once per device instead of once per command. The
+ * session reconnects on the next command after the device (or adb server)
+ * drops it.
+ */
+@Slf4j
+public final class AdbShellSession implements Closeable {
+
+	private static final String SENTINEL = "__ADB_SHELL_SESSION_EOC__";
+	private static final long TIMEOUT_IN_SECONDS = ConfigManager.getLong("adb.shell.timeout",
+			ConfigManager.getLong("command.timeout", 60));
+
+	private static final Map<String, AdbShellSession> SESSIONS = new ConcurrentHashMap<>();
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(AdbShellSession::closeAll, "adb-shell-session-cleanup"));
+	}
+
+	@Getter
+	private final String deviceId;
+	private final String adbExecutable;
+	private final AtomicLong sequence = new AtomicLong();
+	private final Queue<PendingCommand> pending = new ConcurrentLinkedQueue<>();
+
+	private Process process;
+	private Writer stdin;
+
+	/**
+	 * @param adbExecutable {@link String} - path of the adb executable (or any
+	 *                      script behaving like <code>adb -s &lt;id&gt; shell</code>)
+	 * @param deviceId      {@link String}
+	 */
+	public AdbShellSession(@NonNull String adbExecutable, @NonNull String deviceId) {
+		this.adbExecutable = adbExecutable;
+		this.deviceId = deviceId.trim();
+	}
+
+	/**
+	 * Get the shared shell session of the given device
+	 *
+	 * @param deviceId {@link String}
+	 * @return {@link AdbShellSession}
+	 */
+	public static AdbShellSession forDevice(@NonNull String deviceId) {
+		return SESSIONS.computeIfAbsent(deviceId.trim(),
+				id -> new AdbShellSession(ADBUtilities.getADBExecutable(), id));
+	}
+
+	/**
+	 * Close the shell session of the given device, if any
+	 *
+	 * @param deviceId {@link String}
+	 */
+	public static void close(@NonNull String deviceId) {
+		AdbShellSession session = SESSIONS.remove(deviceId.trim());
+		if (session != null) {
+			session.close();
+		}
+	}
+
+	/**
+	 * Close all the open shell sessions
+	 */
+	public static void closeAll() {
+		SESSIONS.values().forEach(AdbShellSession::close);
+		SESSIONS.clear();
+	}
+
+	/**
+	 * Run the given command on the device shell and wait for its response. Once
+	 * the command is written it may have run, so a timeout or a dropped session
+	 * is reported as a response with exit code -1 rather than <code>null</code>,
+	 * keeping callers from running it again another way.
+	 *
+	 * @param command {@link String}
+	 * @return {@link CommandLineResponse} or <code>null</code> if the session
+	 *         could not be opened, i.e. the command was not sent
+	 */
+	public CommandLineResponse exec(@NonNull String command) {
+		try {
+			return execAsync(command).get(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+		} catch (TimeoutException e) {
+			log.error("device '{}' ::: shell command '{}' did not finish within {} seconds, resetting the session",
+					deviceId, command, TIMEOUT_IN_SECONDS);
+			close();
+			return failed(String.format("timed out after %d seconds", TIMEOUT_IN_SECONDS));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return failed("interrupted");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SessionUnavailableException) {
+				log.debug("device '{}' ::: {}", deviceId, e.getCause().getMessage());
+				return null;
+			}
+			log.error("device '{}' ::: shell command '{}' failed => {}", deviceId, command,
+					e.getCause().getMessage());
+			return failed(String.valueOf(e.getCause().getMessage()));
+		}
+	}
+
+	private static CommandLineResponse failed(String message) {
+		CommandLineResponse response = new CommandLineResponse();
+		response.setStdOut("");
+		response.setErrOut(message);
+		response.setExitCode(-1);
+		return response;
+	}
+
+	/**
+	 * Pipeline the given command to the device shell. Responses complete in the
+	 * order the commands were written.
+	 *
+	 * @param command {@link String}
+	 * @return {@link CompletableFuture}&lt;{@link CommandLineResponse}&gt;
+	 */
+	public CompletableFuture<CommandLineResponse> execAsync(@NonNull String command) {
+		CompletableFuture<CommandLineResponse> future = new CompletableFuture<>();
+		synchronized (this) {
+			for (int attempt = 0; attempt < 2; attempt++) {
+				PendingCommand entry = null;
+				try {
+					ensureStarted();
+					entry = new PendingCommand(SENTINEL + sequence.incrementAndGet(), future);
+					pending.add(entry);
+					// stderr joins stdout, as with AdbClient, so that the response carries the error text
+					stdin.write(String.format("{ %s\n} </dev/null 2>&1; echo \"%s:$?\"\n", command.trim(),
+							entry.marker));
+					stdin.flush();
+					return future;
+				} catch (IOException e) {
+					// a write only fails once the shell has exited, so the command did not reach it and
+					// can be written again to a new session
+					if (entry != null) {
+						pending.remove(entry);
+					}
+					log.warn("device '{}' ::: shell session dropped, reconnecting => {}", deviceId, e.getMessage());
+					destroy(e);
+				}
+			}
+		}
+		if (!future.isDone()) {
+			future.completeExceptionally(
+					new SessionUnavailableException("unable to open adb shell session to " + deviceId));
+		}
+		return future;
+	}
+
+	public synchronized boolean isAlive() {
+		return process != null && process.isAlive();
+	}
+
+	private void ensureStarted() throws IOException {
+		if (isAlive()) {
+			return;
+		}
+		ProcessBuilder builder = new ProcessBuilder(adbExecutable, "-s", deviceId, "shell");
+		Process _process = builder.start();
+		process = _process;
+		stdin = new OutputStreamWriter(_process.getOutputStream(), StandardCharsets.UTF_8);
+
+		Thread reader = new Thread(() -> readResponses(_process), "adb-shell-" + deviceId);
+		reader.setDaemon(true);
+		reader.start();
+		Thread errors = new Thread(() -> {
+			String err = CommonUtilities.toString(_process.getErrorStream());
+			if (!CommonUtilities.isBlank(err)) {
+				log.debug("device '{}' ::: shell session stderr => {}", deviceId, err.trim());
+			}
+		}, "adb-shell-err-" + deviceId);
+		errors.setDaemon(true);
+		errors.start();
+		log.debug("device '{}' ::: opened persistent adb shell session", deviceId);
+	}
+
+	private void readResponses(Process _process) {
+		StringBuilder output = new StringBuilder();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(_process.getInputStream(), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				PendingCommand head = pending.peek();
+				int index = head == null ? -1 : line.indexOf(head.marker + ":");
+				if (index < 0) {
+					output.append(line).append('\n');
+					continue;
+				}
+				output.append(line, 0, index);
+				CommandLineResponse response = new CommandLineResponse();
+				response.setStdOut(output.toString().trim());
+				response.setErrOut("");
+				response.setExitCode(parseExitCode(line.substring(index + head.marker.length() + 1)));
+				output.setLength(0);
+				pending.poll();
+				head.future.complete(response);
+			}
+		} catch (IOException e) {
+			log.debug("device '{}' ::: shell session stream closed => {}", deviceId, e.getMessage());
+		}
+		synchronized (this) {
+			if (process == _process) {
+				destroy(new IOException("adb shell session to " + deviceId + " terminated"));
+			}
+		}
+	}
+
+	private static int parseExitCode(String str) {
+		try {
+			return Integer.parseInt(str.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private synchronized void destroy(Exception cause) {
+		if (process != null) {
+			CommandLineExecutor.destroyProcessTree(process);
+			process = null;
+			stdin = null;
+		}
+		PendingCommand command;
+		while ((command = pending.poll()) != null) {
+			command.future.completeExceptionally(cause);
+		}
+	}
+
+	@Override
+	public void close() {
+		destroy(new IOException("adb shell session to " + deviceId + " closed"));
+	}
+
+	private static final class SessionUnavailableException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		private SessionUnavailableException(String message) {
+			super(message);
+		}
+	}
+
+	private static final class PendingCommand {
+
+		private final String marker;
+		private final CompletableFuture<CommandLineResponse> future;
+
+		private PendingCommand(String marker, CompletableFuture<CommandLineResponse> future) {
+			this.marker = marker;
+			this.future = future;
+		}
+	}
+}
@@ -0,0 +1,235 @@
+package com.example.utils.webdriver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.example.utils.CommandLineExecutor;
+import com.example.utils.CommandLineResponse;
+import com.example.utils.CommonUtilities;
+import com.example.utils.ConfigManager;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Installs the app under test only when it changed. The APK is identified by
+ * its SHA-256 and every install is recorded per device (package, versionCode,
+ * lastUpdateTime, hash) in 'app.install.cache.file', so later runs skip the
+ * install as long as the hash matches and the device still reports the same
+ * package state. Installs use <code>--fastdeploy</code> on API 24+ devices
+ * ('app.install.fastdeploy') and fall back to a streamed install.
+ */
+@Slf4j
+public final class AppInstallManager {
+
+	private static final boolean ENABLED = ConfigManager.getBoolean("app.install.cache.enabled", true);
+	private static final boolean FAST_DEPLOY = ConfigManager.getBoolean("app.install.fastdeploy", true);
+	private static final long TIMEOUT = ConfigManager.getLong("app.install.timeout", 300);
+	private static final File CACHE_FILE = new File(
+			ConfigManager.getString("app.install.cache.file", "build/app-install-cache.json"));
+	private static final int FAST_DEPLOY_MIN_SDK = 24;
+
+	private static final Pattern VERSION_CODE = Pattern.compile("versionCode=(\\d+)");
+	private static final Pattern LAST_UPDATE_TIME = Pattern.compile("lastUpdateTime=([^\\r\\n]+)");
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final Map<String, String> HASHES = new ConcurrentHashMap<>();
+	private static final Map<String, InstallRecord> RECORDS = new ConcurrentHashMap<>(load());
+
+	private AppInstallManager() {
+	}
+
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * Install the given APK on the given device unless the same APK is already
+	 * installed there
+	 *
+	 * @param deviceId   {@link String}
+	 * @param appPath    {@link String} - local APK file
+	 * @param appPackage {@link String} - package of the APK, may be
+	 *                   <code>null</code> in which case the device state is not
+	 *                   verified
+	 * @return {@link Boolean} - whether the app is installed
+	 */
+	public static boolean install(@NonNull String deviceId, @NonNull String appPath, final String appPackage) {
+		File apk = new File(appPath.trim());
+		if (!apk.exists()) {
+			log.error("app file '{}' does not exist", apk.getAbsolutePath());
+			return false;
+		}
+		String hash = getHash(apk);
+		String _package = CommonUtilities.isBlank(appPackage) ? null : appPackage.trim();
+		InstallRecord record = RECORDS.get(deviceId);
+		if (ENABLED && record != null && hash.equals(record.getHash())) {
+			InstallRecord current = _package == null ? record : getInstallState(deviceId, _package);
+			if (current != null && record.isSameInstall(current)) {
+				log.info("device '{}' ::: '{}' is up to date, skipping install", deviceId, apk.getName());
+				return true;
+			}
+		}
+		long start = System.currentTimeMillis();
+		if (!runInstall(deviceId, apk)) {
+			return false;
+		}
+		InstallRecord installed = _package == null ? new InstallRecord() : getInstallState(deviceId, _package);
+		if (installed == null) {
+			installed = new InstallRecord();
+		}
+		installed.setAppPackage(_package);
+		installed.setHash(hash);
+		RECORDS.put(deviceId, installed);
+		save();
+		log.info("device '{}' ::: installed '{}' in {} ms", deviceId, apk.getName(),
+				System.currentTimeMillis() - start);
+		return true;
+	}
+
+	private static boolean runInstall(String deviceId, File apk) {
+		String sdk = ADBUtilities.getDeviceProperty(deviceId, "ro.build.version.sdk");
+		boolean fastDeploy = FAST_DEPLOY && parseInt(sdk) >= FAST_DEPLOY_MIN_SDK;
+		if (fastDeploy && runInstall(deviceId, apk, "--fastdeploy")) {
+			return true;
+		}
+		if (fastDeploy) {
+			log.warn("device '{}' ::: fast deploy of '{}' failed, falling back to a streamed install", deviceId,
+					apk.getName());
+		}
+		return runInstall(deviceId, apk, "--streaming") || runInstall(deviceId, apk, null);
+	}
+
+	private static boolean runInstall(String deviceId, File apk, String flag) {
+		List<String> command = new ArrayList<>();
+		command.add(ADBUtilities.getADBExecutable());
+		command.add("-s");
+		command.add(deviceId);
+		command.add("install");
+		command.add("-r");
+		if (flag != null) {
+			command.add(flag);
+		}
+		command.add(apk.getAbsolutePath());
+		CommandLineResponse response = CommandLineExecutor.execCommand(TIMEOUT, TimeUnit.SECONDS,
+				command.toArray(new String[0]));
+		boolean result = response != null && response.getExitCode() == 0
+				&& (response.getStdOut() + response.getErrOut()).toLowerCase().contains("success");
+		log.debug("device '{}' ::: install {} '{}' successful ? {}", deviceId, flag == null ? "" : flag,
+				apk.getName(), result);
+		return result;
+	}
+
+	private static InstallRecord getInstallState(String deviceId, String appPackage) {
+		CommandLineResponse response = ADBUtilities.shell(deviceId,
+				String.format("dumpsys package %s | grep -E '(versionCode|lastUpdateTime)='", appPackage));
+		if (response == null || response.getExitCode() != 0) {
+			return null;
+		}
+		Matcher versionCode = VERSION_CODE.matcher(response.getStdOut());
+		Matcher lastUpdateTime = LAST_UPDATE_TIME.matcher(response.getStdOut());
+		if (!versionCode.find() || !lastUpdateTime.find()) {
+			return null;
+		}
+		return new InstallRecord(appPackage, Long.parseLong(versionCode.group(1)), lastUpdateTime.group(1).trim(),
+				null);
+	}
+
+	/**
+	 * SHA-256 of the given file, computed once per path, size and modification
+	 * time
+	 */
+	private static String getHash(File file) {
+		String key = String.format("%s|%d|%d", file.getAbsolutePath(), file.length(), file.lastModified());
+		return HASHES.computeIfAbsent(key, k -> {
+			try (InputStream in = Files.newInputStream(file.toPath())) {
+				MessageDigest digest = MessageDigest.getInstance("SHA-256");
+				byte[] buffer = new byte[64 * 1024];
+				int read;
+				while ((read = in.read(buffer)) > 0) {
+					digest.update(buffer, 0, read);
+				}
+				StringBuilder hex = new StringBuilder();
+				for (byte b : digest.digest()) {
+					hex.append(String.format("%02x", b));
+				}
+				return hex.toString();
+			} catch (IOException | NoSuchAlgorithmException e) {
+				throw new RuntimeException(String.format("unable to hash '%s'", file.getAbsolutePath()), e);
+			}
+		});
+	}
+
+	private static Map<String, InstallRecord> load() {
+		if (!ENABLED || !CACHE_FILE.exists()) {
+			return new ConcurrentHashMap<>();
+		}
+		try {
+			return MAPPER.readValue(CACHE_FILE, new TypeReference<Map<String, InstallRecord>>() {
+			});
+		} catch (IOException e) {
+			log.warn("unable to read app install cache '{}', starting empty => {}", CACHE_FILE, e.getMessage());
+			return new ConcurrentHashMap<>();
+		}
+	}
+
+	private static synchronized void save() {
+		if (!ENABLED) {
+			return;
+		}
+		try {
+			File parent = CACHE_FILE.getAbsoluteFile().getParentFile();
+			if (parent != null && !parent.exists()) {
+				parent.mkdirs();
+			}
+			File temp = new File(parent, CACHE_FILE.getName() + ".tmp");
+			MAPPER.writerWithDefaultPrettyPrinter().writeValue(temp, RECORDS);
+			Files.move(temp.toPath(), CACHE_FILE.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			log.warn("unable to write app install cache '{}' => {}", CACHE_FILE, e.getMessage());
+		}
+	}
+
+	private static int parseInt(String str) {
+		try {
+			return str == null ? 0 : Integer.parseInt(str.trim());
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	@Data
+	@NoArgsConstructor
+	@AllArgsConstructor
+	public static class InstallRecord {
+
+		private String appPackage;
+		private long versionCode;
+		private String lastUpdateTime;
+		private String hash;
+
+		private boolean isSameInstall(InstallRecord other) {
+			return versionCode == other.versionCode
+					&& (lastUpdateTime == null ? other.lastUpdateTime == null
+							: lastUpdateTime.equals(other.lastUpdateTime));
+		}
+	}
+}
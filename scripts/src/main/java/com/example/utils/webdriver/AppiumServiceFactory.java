@@ -3,9 +3,16 @@ package com.example.utils.webdriver;
 import java.io.File;
 import java.net.URL;
 import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.RandomStringUtils;
@@ -14,8 +21,10 @@ import org.openqa.selenium.remote.DesiredCapabilities;
 import com.example.Platform;
 import com.example.utils.CommonUtilities;
 import com.example.utils.ConfigManager;
-import com.example.utils.ProcessUtils;
+import com.example.utils.PortAllocator;
+import com.example.utils.device.Device;
 
+import io.appium.java_client.remote.AndroidMobileCapabilityType;
 import io.appium.java_client.service.local.AppiumDriverLocalService;
 import io.appium.java_client.service.local.AppiumServiceBuilder;
 import io.appium.java_client.service.local.flags.AndroidServerFlag;
@@ -27,15 +36,24 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public final class AppiumServiceFactory {
 
-	private static AtomicInteger appiumPort;
-	private static AtomicInteger bootstrapPort;
-	private static AtomicInteger chromeDriverPort;
-	private static AtomicInteger webkitProxyPort;
+	private static final int APPIUM_PORT = ConfigManager.getInt("appium.port", 4723);
+	private static final int BOOTSTRAP_PORT = ConfigManager.getInt("appium.port.bootstrap", 4823);
+	private static final int CHROME_DRIVER_PORT = ConfigManager.getInt("appium.android.port.chrome_driver", 4923);
+	private static final int WEBKIT_PROXY_PORT = ConfigManager.getInt("appium.ios.port.webkit_proxy", 4623);
 
 	private static File appiumExecPath;
 	private static File nodeExecPath;
 
 	private static final Map<String, AppiumDriverLocalService> LOCAL_APPIUM_SERVICE = new ConcurrentHashMap<>();
+	private static final String SERVICE_MODE = ConfigManager.getString("appium.service.mode", "per_session").trim()
+			.toLowerCase();
+	private static final boolean IS_POOLED = "pooled".equals(SERVICE_MODE);
+	private static final boolean IS_SHARED = "shared".equals(SERVICE_MODE);
+
+	private static final List<AppiumDriverLocalService> SHARED_APPIUM_SERVICES = new CopyOnWriteArrayList<>();
+	private static final Map<AppiumDriverLocalService, AtomicInteger> SHARED_SERVICE_SESSIONS = new ConcurrentHashMap<>();
+	private static final Map<String, AppiumDriverLocalService> DEVICE_SHARED_SERVICE = new ConcurrentHashMap<>();
+	private static final AppiumServiceMetrics METRICS = new AppiumServiceMetrics();
 
 	private static final Map<String, String> ENV = new HashMap<>();
 	private static final File APPIUM_LOG_DIR = Paths.get("logs", "appium").toFile();
@@ -44,7 +62,6 @@ public final class AppiumServiceFactory {
 	}
 
 	static {
-		setPorts();
 		setEnvironment();
 		setExecutables();
 	}
@@ -68,15 +85,28 @@ public final class AppiumServiceFactory {
 		nodeExecPath = CommonUtilities.findLocalExecutable("node");
 	}
 
-	private static void setPorts() {
-		appiumPort = new AtomicInteger(ConfigManager.getInt("appium.port"));
-		bootstrapPort = new AtomicInteger(ConfigManager.getInt("appium.port.bootstrap"));
-		chromeDriverPort = new AtomicInteger(ConfigManager.getInt("appium.port.chrome_driver"));
-		webkitProxyPort = new AtomicInteger(ConfigManager.getInt("appium.port.webkit_proxy"));
+	/**
+	 * Owner tag of the ports leased for a single session of the given device
+	 * (system port, WDA port, per-session chromedriver/webkit ports). They are
+	 * released by {@link #stopLocalAppiumService(String)}.
+	 *
+	 * @param deviceId {@link String}
+	 * @return {@link String}
+	 */
+	static String getSessionPortOwner(@NonNull String deviceId) {
+		return "session:" + deviceId;
+	}
+
+	private static String getServicePortOwner(String deviceId) {
+		return "appium:" + deviceId;
 	}
 
 	/**
-	 * Start Appium service for the given deviceId
+	 * Start Appium service for the given deviceId. In pooled mode
+	 * ('appium.service.mode = pooled') a healthy warm server of the device is
+	 * reused instead. In shared mode ('appium.service.mode = shared') the session
+	 * is routed to the least loaded of 'appium.service.shared.count' servers and
+	 * the device specific ports are passed as session capabilities.
 	 *
 	 * @param deviceId  {@link String}
 	 * @param isAndroid {@link Boolean}
@@ -85,24 +115,144 @@ public final class AppiumServiceFactory {
 	public static URL startAppiumService(@NonNull final String deviceId, final boolean isAndroid,
 			@NonNull DesiredCapabilities capabilities) {
 
-		File logFile = new File(APPIUM_LOG_DIR.getPath(),
-				deviceId + "_" + RandomStringUtils.randomAlphabetic(10) + ".log");
+		if (IS_SHARED) {
+			return getSharedService(deviceId, isAndroid, capabilities);
+		}
+		if (IS_POOLED) {
+			AppiumDriverLocalService service = LOCAL_APPIUM_SERVICE.get(deviceId);
+			if (service != null && service.isRunning()) {
+				METRICS.hit();
+				log.debug("device '{}' ::: reusing warm appium service at {}", deviceId, service.getUrl());
+				return service.getUrl();
+			}
+			METRICS.miss();
+			if (service != null) {
+				log.warn("device '{}' ::: warm appium service at {} is not healthy, restarting it", deviceId,
+						service.getUrl());
+				shutdownAppiumService(deviceId);
+			}
+			return startService(deviceId, buildService(deviceId, isAndroid, null));
+		}
+		Object wdaLocalPort = capabilities.getCapability("wdaLocalPort");
+		return startService(deviceId,
+				buildService(deviceId, isAndroid, wdaLocalPort == null ? null : wdaLocalPort.toString()));
+	}
 
-		int _appiumPort = appiumPort.getAndIncrement();
-		int _bootstrapPort = bootstrapPort.getAndIncrement();
-		int _chromeDriverPort = chromeDriverPort.getAndIncrement();
+	private static URL getSharedService(final String deviceId, final boolean isAndroid,
+			DesiredCapabilities capabilities) {
 
-		ProcessUtils.killProcessListeningAtPort(_appiumPort);
-		ProcessUtils.killProcessListeningAtPort(_bootstrapPort);
+		startSharedServices();
+		AppiumDriverLocalService service = DEVICE_SHARED_SERVICE.computeIfAbsent(deviceId, id -> {
+			AppiumDriverLocalService leastLoaded = SHARED_APPIUM_SERVICES.stream()
+					.min(Comparator.comparingInt(s -> SHARED_SERVICE_SESSIONS.get(s).get())).orElse(null);
+			if (leastLoaded != null) {
+				SHARED_SERVICE_SESSIONS.get(leastLoaded).incrementAndGet();
+			}
+			return leastLoaded;
+		});
+		if (service == null) {
+			log.error("device '{}' ::: no shared appium service is running", deviceId);
+			return null;
+		}
+		METRICS.hit();
+		if (isAndroid) {
+			capabilities.setCapability(AndroidMobileCapabilityType.CHROMEDRIVER_PORT,
+					PortAllocator.lease(CHROME_DRIVER_PORT, getSessionPortOwner(deviceId)));
+			Integer _chromeDriverVersion = getAppVersion(deviceId, "com.android.chrome");
+			if (_chromeDriverVersion != null) {
+				capabilities.setCapability(AndroidMobileCapabilityType.CHROMEDRIVER_EXECUTABLE,
+						ChromeDriverExecutableUtils.getChromeDriverExecutable(_chromeDriverVersion.toString())
+								.getAbsolutePath());
+			}
+		} else if (IOSUtilities.getConnectedRealDevices().containsKey(deviceId)) {
+			capabilities.setCapability("webkitDebugProxyPort",
+					PortAllocator.lease(WEBKIT_PROXY_PORT, getSessionPortOwner(deviceId)));
+		}
+		log.debug("device '{}' ::: routed to shared appium service at {}", deviceId, service.getUrl());
+		return service.getUrl();
+	}
 
-		AppiumServiceBuilder builder = new AppiumServiceBuilder().usingPort(_appiumPort).withEnvironment(ENV)
-				.withAppiumJS(appiumExecPath).usingDriverExecutable(nodeExecPath)
-				.withArgument(GeneralServerFlag.LOG_LEVEL, "error:debug").withArgument(GeneralServerFlag.ASYNC_TRACE)
-				.withArgument(GeneralServerFlag.DEBUG_LOG_SPACING).withArgument(GeneralServerFlag.RELAXED_SECURITY)
-				.withArgument(GeneralServerFlag.SESSION_OVERRIDE).withLogFile(logFile);
+	private static synchronized void startSharedServices() {
+		int count = Math.max(1, ConfigManager.getInt("appium.service.shared.count", 1));
+		SHARED_APPIUM_SERVICES.removeIf(service -> {
+			if (!service.isRunning()) {
+				log.warn("shared appium service at {} is not healthy, replacing it", service.getUrl());
+				SHARED_SERVICE_SESSIONS.remove(service);
+				DEVICE_SHARED_SERVICE.values().removeIf(service::equals);
+				PortAllocator.release(service.getUrl().getPort());
+				return true;
+			}
+			return false;
+		});
+		while (SHARED_APPIUM_SERVICES.size() < count) {
+			int index = SHARED_APPIUM_SERVICES.size();
+			File logFile = new File(APPIUM_LOG_DIR.getPath(),
+					"shared_" + index + "_" + RandomStringUtils.randomAlphabetic(10) + ".log");
+			int _appiumPort = PortAllocator.lease(APPIUM_PORT, getServicePortOwner("shared-" + index));
+			AppiumDriverLocalService service;
+			long start = System.currentTimeMillis();
+			try {
+				service = newServiceBuilder(_appiumPort, logFile, false).build();
+				service.start();
+			} catch (RuntimeException e) {
+				PortAllocator.release(_appiumPort);
+				throw e;
+			}
+			METRICS.booted(System.currentTimeMillis() - start);
+			log.info("shared appium service #{} started at {} in {} ms and writing logs to '{}'", index,
+					service.getUrl(), System.currentTimeMillis() - start, logFile);
+			SHARED_SERVICE_SESSIONS.put(service, new AtomicInteger());
+			SHARED_APPIUM_SERVICES.add(service);
+		}
+	}
+
+	/**
+	 * Boot the Appium services up front so that sessions find a warm server: one
+	 * per given device in pooled mode, 'appium.service.shared.count' in shared
+	 * mode. Does nothing in the default per-session mode.
+	 *
+	 * @param devices {@link Collection}&lt;{@link Device}&gt;
+	 */
+	public static void prestartAppiumServices(@NonNull Collection<Device> devices) {
+		if (IS_SHARED) {
+			startSharedServices();
+			return;
+		}
+		if (!IS_POOLED || devices.isEmpty()) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(devices.size());
+		try {
+			CompletableFuture.allOf(devices.stream()
+					.map(device -> CompletableFuture.runAsync(() -> {
+						if (!LOCAL_APPIUM_SERVICE.containsKey(device.getId())) {
+							startService(device.getId(), buildService(device.getId(), device.isAndroid(), null));
+						}
+					}, executor))
+					.toArray(CompletableFuture[]::new)).join();
+		} catch (Exception e) {
+			log.error("error occurred while pre-starting appium services", e);
+		} finally {
+			executor.shutdown();
+		}
+		log.info("pre-started {} appium services in {} ms => {}", LOCAL_APPIUM_SERVICE.size(),
+				System.currentTimeMillis() - start, METRICS);
+	}
+
+	private static AppiumDriverLocalService buildService(final String deviceId, final boolean isAndroid,
+			final String wdaLocalPort) {
+
+		File logFile = new File(APPIUM_LOG_DIR.getPath(),
+				deviceId + "_" + RandomStringUtils.randomAlphabetic(10) + ".log");
+
+		String owner = getServicePortOwner(deviceId);
+		int _appiumPort = PortAllocator.lease(APPIUM_PORT, owner);
+		AppiumServiceBuilder builder = newServiceBuilder(_appiumPort, logFile, true);
 
 		if (isAndroid) {
-			ProcessUtils.killProcessListeningAtPort(_chromeDriverPort);
+			int _bootstrapPort = PortAllocator.lease(BOOTSTRAP_PORT, owner);
+			int _chromeDriverPort = PortAllocator.lease(CHROME_DRIVER_PORT, owner);
 			Integer _chromeDriverVersion = getAppVersion(deviceId, "com.android.chrome");
 			if (_chromeDriverVersion != null) {
 				builder.withArgument(AndroidServerFlag.CHROME_DRIVER_EXECUTABLE,
@@ -113,21 +263,45 @@ public final class AppiumServiceFactory {
 					.withArgument(AndroidServerFlag.CHROME_DRIVER_PORT, String.valueOf(_chromeDriverPort));
 		} else {
 			if (IOSUtilities.getConnectedRealDevices().containsKey(deviceId)) {
-				int _proxyPort = webkitProxyPort.getAndIncrement();
-				ProcessUtils.killProcessListeningAtPort(_proxyPort);
-				builder.withArgument(IOSServerFlag.WEBKIT_DEBUG_PROXY_PORT, String.valueOf(_proxyPort))
-						.withArgument(() -> "--webdriveragent-port",
-								capabilities.getCapability("wdaLocalPort").toString());
+				int _proxyPort = PortAllocator.lease(WEBKIT_PROXY_PORT, owner);
+				builder.withArgument(IOSServerFlag.WEBKIT_DEBUG_PROXY_PORT, String.valueOf(_proxyPort));
+				if (wdaLocalPort != null) {
+					builder.withArgument(() -> "--webdriveragent-port", wdaLocalPort);
+				}
 			}
 		}
-		AppiumDriverLocalService service = builder.build();
+		log.debug("device '{}' ::: appium service on port {} writes logs to '{}'", deviceId, _appiumPort, logFile);
+		return builder.build();
+	}
+
+	/**
+	 * @param port        {@link Integer}
+	 * @param logFile     {@link File}
+	 * @param overridable {@link Boolean} - whether a new session replaces the
+	 *                    running ones, only for servers dedicated to one device:
+	 *                    on a shared server it would end the sessions of the
+	 *                    other devices
+	 * @return {@link AppiumServiceBuilder}
+	 */
+	private static AppiumServiceBuilder newServiceBuilder(int port, File logFile, boolean overridable) {
+		AppiumServiceBuilder builder = new AppiumServiceBuilder().usingPort(port).withEnvironment(ENV)
+				.withAppiumJS(appiumExecPath).usingDriverExecutable(nodeExecPath)
+				.withArgument(GeneralServerFlag.LOG_LEVEL, "error:debug").withArgument(GeneralServerFlag.ASYNC_TRACE)
+				.withArgument(GeneralServerFlag.DEBUG_LOG_SPACING).withArgument(GeneralServerFlag.RELAXED_SECURITY)
+				.withLogFile(logFile);
+		return overridable ? builder.withArgument(GeneralServerFlag.SESSION_OVERRIDE) : builder;
+	}
+
+	private static URL startService(final String deviceId, AppiumDriverLocalService service) {
 		LOCAL_APPIUM_SERVICE.put(deviceId, service);
 
 		if (service != null && !service.isRunning()) {
 			try {
+				long start = System.currentTimeMillis();
 				service.start();
-				log.info("appium session started for device '{}' at {} and writing logs to '{}'", deviceId,
-						service.getUrl(), logFile);
+				METRICS.booted(System.currentTimeMillis() - start);
+				log.info("appium session started for device '{}' at {} in {} ms", deviceId, service.getUrl(),
+						System.currentTimeMillis() - start);
 				return service.getUrl();
 			} catch (Exception e) {
 				e.printStackTrace();
@@ -136,13 +310,65 @@ public final class AppiumServiceFactory {
 		return null;
 	}
 
+	/**
+	 * Stop the Appium service of the given device once its session is over. Warm
+	 * services are kept running in pooled mode. The ports leased for the session
+	 * are released in every mode.
+	 *
+	 * @param deviceId {@link String}
+	 */
 	public static void stopLocalAppiumService(@NonNull String deviceId) {
-		if (LOCAL_APPIUM_SERVICE.containsKey(deviceId) && LOCAL_APPIUM_SERVICE.get(deviceId).isRunning()) {
-			log.info("device '{}' ::: stopping appium service running on {}", deviceId,
-					LOCAL_APPIUM_SERVICE.get(deviceId).getUrl());
-			LOCAL_APPIUM_SERVICE.get(deviceId).stop();
-			LOCAL_APPIUM_SERVICE.remove(deviceId);
+		PortAllocator.releaseAll(getSessionPortOwner(deviceId));
+		if (IS_SHARED) {
+			AppiumDriverLocalService service = DEVICE_SHARED_SERVICE.remove(deviceId);
+			if (service != null && SHARED_SERVICE_SESSIONS.containsKey(service)) {
+				SHARED_SERVICE_SESSIONS.get(service).decrementAndGet();
+			}
+			return;
+		}
+		if (!IS_POOLED) {
+			shutdownAppiumService(deviceId);
+		}
+	}
+
+	/**
+	 * Stop the Appium service of the given device regardless of the mode
+	 *
+	 * @param deviceId {@link String}
+	 */
+	public static void shutdownAppiumService(@NonNull String deviceId) {
+		if (IS_SHARED) {
+			stopLocalAppiumService(deviceId);
+			return;
+		}
+		AppiumDriverLocalService service = LOCAL_APPIUM_SERVICE.remove(deviceId);
+		if (service != null && service.isRunning()) {
+			log.info("device '{}' ::: stopping appium service running on {}", deviceId, service.getUrl());
+			service.stop();
 		}
+		PortAllocator.releaseAll(getServicePortOwner(deviceId));
+	}
+
+	/**
+	 * Stop every running Appium service and report the pool metrics
+	 */
+	public static void shutdownAllAppiumServices() {
+		LOCAL_APPIUM_SERVICE.keySet().forEach(AppiumServiceFactory::shutdownAppiumService);
+		SHARED_APPIUM_SERVICES.forEach(service -> {
+			log.info("stopping shared appium service running on {}", service.getUrl());
+			service.stop();
+			PortAllocator.release(service.getUrl().getPort());
+		});
+		SHARED_APPIUM_SERVICES.clear();
+		SHARED_SERVICE_SESSIONS.clear();
+		DEVICE_SHARED_SERVICE.clear();
+		if (IS_POOLED || IS_SHARED) {
+			log.info("appium service pool => {}", METRICS);
+		}
+	}
+
+	public static AppiumServiceMetrics getMetrics() {
+		return METRICS;
 	}
 
 	private static Integer getAppVersion(final String deviceId, @NonNull final String appPackage) {
@@ -0,0 +1,61 @@
+package com.example.utils.webdriver;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the Appium service pool: how often a warm server was reused
+ * (hit) or had to be booted (miss) and how long the boots took.
+ */
+public final class AppiumServiceMetrics {
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong boots = new AtomicLong();
+	private final AtomicLong totalBootTime = new AtomicLong();
+	private final AtomicLong maxBootTime = new AtomicLong();
+
+	void hit() {
+		hits.incrementAndGet();
+	}
+
+	void miss() {
+		misses.incrementAndGet();
+	}
+
+	void booted(long millis) {
+		boots.incrementAndGet();
+		totalBootTime.addAndGet(millis);
+		maxBootTime.accumulateAndGet(millis, Math::max);
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getBoots() {
+		return boots.get();
+	}
+
+	public long getTotalBootTime() {
+		return totalBootTime.get();
+	}
+
+	public long getMaxBootTime() {
+		return maxBootTime.get();
+	}
+
+	public long getAverageBootTime() {
+		long count = boots.get();
+		return count == 0 ? 0 : totalBootTime.get() / count;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("hits=%d, misses=%d, boots=%d, boot time (ms) total=%d avg=%d max=%d", getHits(),
+				getMisses(), getBoots(), getTotalBootTime(), getAverageBootTime(), getMaxBootTime());
+	}
+}
@@ -39,7 +39,7 @@ public final class ChromeDriverExecutableUtils {
 	private static final Platform PLATFORM = Platform.CURRENT_PLATFORM;
 	private static final Map<String, List<Integer>> OLDER_CHROME_VERSION_MAPPING = new LinkedHashMap<>();
 
-	public static File getChromeDriverExecutable(String chromeVersion) {
+	public static synchronized File getChromeDriverExecutable(String chromeVersion) {
 		String version = getMajorVersion(
 				CommonUtilities.isBlank(chromeVersion) ? getLatestChromeDriverVersion() : chromeVersion);
 		String versionToDownload = null;
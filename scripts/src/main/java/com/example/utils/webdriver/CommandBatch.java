@@ -0,0 +1,467 @@
+package com.example.utils.webdriver;
+
+import static com.example.utils.ConfigManager.getBoolean;
+import static com.example.utils.ConfigManager.getString;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.UnsupportedCommandException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+
+import com.example.ScrollDirection;
+import com.example.utils.ArtifactWriter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.appium.java_client.AppiumDriver;
+import io.appium.java_client.ExecutesDriverScript;
+import io.appium.java_client.android.AndroidDriver;
+import io.appium.java_client.android.nativekey.AndroidKey;
+import io.appium.java_client.android.nativekey.KeyEvent;
+import io.appium.java_client.driverscripts.ScriptOptions;
+import io.appium.java_client.driverscripts.ScriptType;
+import io.appium.java_client.driverscripts.ScriptValue;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Records a sequence of element and device operations and submits them to the
+ * Appium server in a single <code>executeDriverScript</code> call, a
+ * WebdriverIO script run next to the device (requires the server to run with
+ * <code>--relaxed-security</code>), so that a whole page-object flow costs one
+ * round trip instead of one per command. Steps run in order and the batch
+ * stops at the first failed step; the remaining steps are reported as skipped.
+ * When the server rejects driver scripts, or 'appium.execute_driver' is
+ * <code>false</code>, the same steps run one by one through the driver. A
+ * script that fails otherwise (timeout, lost response) may have run in part,
+ * so its steps are reported as failed rather than run again.
+ *
+ * <pre>
+ * utils.batch().click(search).sendKeys(text, query).pressKey(AndroidKey.ENTER).hideKeyboard()
+ * 		.waitFor(results, 10).screenshot("search").scroll(ScrollDirection.UP, 5).execute();
+ * </pre>
+ */
+@Slf4j
+public final class CommandBatch {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final String SCRIPT = String.join("\n",
+			"const W3C_ELEMENT = 'element-6066-11e4-a52e-4f735466cecf';",
+			"const find = async (step) => {",
+			"  const element = await driver.findElement(step.using, step.value);",
+			"  if (!element || element.error) {",
+			"    throw new Error((element && element.message) || `no such element ${step.using}=${step.value}`);",
+			"  }",
+			"  return element[W3C_ELEMENT] || element.ELEMENT;",
+			"};",
+			"let window = null;",
+			"const results = [];",
+			"for (const step of steps) {",
+			"  const start = Date.now();",
+			"  try {",
+			"    let value = null;",
+			"    switch (step.type) {",
+			"      case 'click': await driver.elementClick(await find(step)); break;",
+			"      case 'clear': await driver.elementClear(await find(step)); break;",
+			"      case 'sendKeys': await driver.elementSendKeys(await find(step), step.text); break;",
+			"      case 'pressKey': await driver.pressKeyCode(step.keycode); break;",
+			"      case 'hideKeyboard': await driver.hideKeyboard(); break;",
+			"      case 'screenshot': value = await driver.takeScreenshot(); break;",
+			"      case 'waitFor': {",
+			"        const deadline = start + step.timeout;",
+			"        let found = [];",
+			"        while ((found = await driver.findElements(step.using, step.value)).length === 0",
+			"            && Date.now() < deadline) {",
+			"          await driver.pause(100);",
+			"        }",
+			"        if (found.length === 0) {",
+			"          throw new Error(`${step.using}=${step.value} not present after ${step.timeout} ms`);",
+			"        }",
+			"        break;",
+			"      }",
+			"      case 'scroll': {",
+			"        window = window || await driver.getWindowRect();",
+			"        const x = Math.floor(window.width / 2);",
+			"        const y = Math.floor(window.height / 2);",
+			"        await driver.performActions([{",
+			"          type: 'pointer', id: 'finger', parameters: { pointerType: 'touch' },",
+			"          actions: [{ type: 'pointerMove', duration: 0, x: x, y: y }, { type: 'pointerDown', button: 0 },",
+			"            { type: 'pause', duration: 100 },",
+			"            { type: 'pointerMove', duration: 250, x: x + step.dx, y: y + step.dy },",
+			"            { type: 'pointerUp', button: 0 }] }]);",
+			"        await driver.releaseActions();",
+			"        break;",
+			"      }",
+			"      default: throw new Error(`unknown step ${step.type}`);",
+			"    }",
+			"    results.push({ status: 'PASSED', value: value, duration: Date.now() - start });",
+			"  } catch (e) {",
+			"    results.push({ status: 'FAILED', error: e.message, duration: Date.now() - start });",
+			"    break;",
+			"  }",
+			"}",
+			"return results;");
+
+	private final WebDriverWrapper utils;
+	private final WebDriver driver;
+	private final String deviceId;
+	private final List<Step> steps = new ArrayList<>();
+
+	CommandBatch(@NonNull WebDriverWrapper utils, @NonNull WebDriver driver, final String deviceId) {
+		this.utils = utils;
+		this.driver = driver;
+		this.deviceId = deviceId;
+	}
+
+	public enum Status {
+		PASSED, FAILED, SKIPPED
+	}
+
+	public CommandBatch click(@NonNull By locator) {
+		return add(new Step("click", locator, null, driver -> {
+			driver.findElement(locator).click();
+			return null;
+		}));
+	}
+
+	public CommandBatch clear(@NonNull By locator) {
+		return add(new Step("clear", locator, null, driver -> {
+			driver.findElement(locator).clear();
+			return null;
+		}));
+	}
+
+	public CommandBatch sendKeys(@NonNull By locator, @NonNull String text) {
+		return add(new Step("sendKeys", locator, Collections.singletonMap("text", text), driver -> {
+			driver.findElement(locator).sendKeys(text);
+			return null;
+		}));
+	}
+
+	/**
+	 * Wait for an element to be present
+	 *
+	 * @param locator {@link By}
+	 * @param timeout {@link Long} - in seconds
+	 * @return {@link CommandBatch}
+	 */
+	public CommandBatch waitFor(@NonNull By locator, long timeout) {
+		return add(new Step("waitFor", locator, Collections.singletonMap("timeout", TimeUnit.SECONDS.toMillis(timeout)),
+				driver -> {
+					utils.until(ExpectedConditions.presenceOfElementLocated(locator), timeout);
+					return null;
+				}));
+	}
+
+	/**
+	 * Press a key of an android device
+	 *
+	 * @param key {@link AndroidKey}
+	 * @return {@link CommandBatch}
+	 */
+	public CommandBatch pressKey(@NonNull AndroidKey key) {
+		return add(new Step("pressKey", null, Collections.singletonMap("keycode", key.getCode()), driver -> {
+			((AndroidDriver<?>) driver).pressKey(new KeyEvent(key));
+			return null;
+		}));
+	}
+
+	public CommandBatch hideKeyboard() {
+		return add(new Step("hideKeyboard", null, null, driver -> {
+			((AppiumDriver<?>) driver).hideKeyboard();
+			return null;
+		}));
+	}
+
+	/**
+	 * Take a screenshot, saved to 'ui.screenshots.dir' and attached to the report
+	 * once the batch is executed
+	 *
+	 * @param name {@link String}
+	 * @return {@link CommandBatch}
+	 */
+	public CommandBatch screenshot(@NonNull String name) {
+		return add(new Step("screenshot", null, Collections.singletonMap("name", name),
+				driver -> ((TakesScreenshot) driver).getScreenshotAs(OutputType.BASE64)));
+	}
+
+	public CommandBatch scroll(@NonNull ScrollDirection direction, int times) {
+		for (int i = 0; i < Math.max(1, times); i++) {
+			scroll(direction);
+		}
+		return this;
+	}
+
+	public CommandBatch scroll(@NonNull ScrollDirection direction) {
+		Map<String, Object> params = new LinkedHashMap<>();
+		params.put("dx", direction == ScrollDirection.LEFT ? -ScrollEngine.SWIPE_LENGTH
+				: direction == ScrollDirection.RIGHT ? ScrollEngine.SWIPE_LENGTH : 0);
+		params.put("dy", direction == ScrollDirection.UP ? -ScrollEngine.SWIPE_LENGTH
+				: direction == ScrollDirection.DOWN ? ScrollEngine.SWIPE_LENGTH : 0);
+		return add(new Step("scroll", null, params, driver -> {
+			utils.scroll(direction, 1);
+			return null;
+		}));
+	}
+
+	private CommandBatch add(Step step) {
+		steps.add(step);
+		return this;
+	}
+
+	public int size() {
+		return steps.size();
+	}
+
+	/**
+	 * Run the recorded steps, in a single round trip when the server supports
+	 * driver scripts
+	 *
+	 * @return {@link Result}
+	 */
+	public Result execute() {
+		long start = System.currentTimeMillis();
+		List<StepResult> results = null;
+		boolean remote = false;
+		if (getBoolean("appium.execute_driver", true) && driver instanceof ExecutesDriverScript) {
+			results = executeRemotely();
+			remote = results != null;
+		}
+		if (results == null) {
+			results = executeLocally();
+		}
+		utils.invalidateSnapshot();
+		saveScreenshots(results);
+		Result result = new Result(results, remote, System.currentTimeMillis() - start);
+		log.debug("device '{}' ::: executed a batch of {} steps {} in {} ms, successful ? {}", deviceId, steps.size(),
+				remote ? "in one driver script" : "one by one", result.getDuration(), result.isSuccessful());
+		return result;
+	}
+
+	private List<StepResult> executeRemotely() {
+		List<Map<String, Object>> json = new ArrayList<>();
+		steps.forEach(step -> json.add(step.toJson()));
+		String script;
+		try {
+			script = "const steps = " + MAPPER.writeValueAsString(json) + ";\n" + SCRIPT;
+		} catch (JsonProcessingException e) {
+			throw new RuntimeException("unable to serialize batch steps", e);
+		}
+		long timeout = steps.stream().mapToLong(step -> step.params == null || !step.params.containsKey("timeout") ? 0
+				: ((Number) step.params.get("timeout")).longValue()).sum() + TimeUnit.MINUTES.toMillis(1);
+		ScriptValue value;
+		try {
+			value = ((ExecutesDriverScript) driver).executeDriverScript(script,
+					new ScriptOptions().withScriptType(ScriptType.WEBDRIVERIO).withTimeout(timeout));
+		} catch (WebDriverException e) {
+			if (isUnsupported(e)) {
+				log.warn("device '{}' ::: unable to execute driver script, running the steps one by one => {}",
+						deviceId, e.getMessage());
+				return null;
+			}
+			// the script may have run in part or entirely, running the steps again could repeat them
+			log.error("device '{}' ::: driver script failed, outcome of the steps unknown => {}", deviceId,
+					e.getMessage());
+			List<StepResult> results = new ArrayList<>();
+			for (Step step : steps) {
+				results.add(new StepResult(results.size(), step.toString(), Status.FAILED, null,
+						"outcome unknown, driver script failed: " + e.getMessage(), 0));
+			}
+			return results;
+		}
+		List<StepResult> results = new ArrayList<>();
+		if (value.getResult() instanceof List) {
+			for (Object item : (List<?>) value.getResult()) {
+				Map<?, ?> map = (Map<?, ?>) item;
+				Step step = steps.get(results.size());
+				Object number = map.get("duration");
+				Object error = map.get("error");
+				results.add(new StepResult(results.size(), step.toString(), Status.valueOf(String.valueOf(
+						map.get("status"))), map.get("value"), error == null ? null : String.valueOf(error),
+						number instanceof Number ? ((Number) number).longValue() : 0));
+			}
+		}
+		skipRemaining(results);
+		return results;
+	}
+
+	/**
+	 * Whether the server rejected the driver script without running it: the
+	 * command is unknown to it or it runs without
+	 * <code>--relaxed-security</code>
+	 */
+	private static boolean isUnsupported(WebDriverException e) {
+		String message = String.valueOf(e.getMessage()).toLowerCase();
+		return e instanceof UnsupportedCommandException || message.contains("unknown command")
+				|| message.contains("unknown method") || message.contains("insecure feature");
+	}
+
+	private List<StepResult> executeLocally() {
+		List<StepResult> results = new ArrayList<>();
+		for (Step step : steps) {
+			long start = System.currentTimeMillis();
+			try {
+				Object value = step.local.run(driver);
+				results.add(new StepResult(results.size(), step.toString(), Status.PASSED, value, null,
+						System.currentTimeMillis() - start));
+			} catch (RuntimeException e) {
+				results.add(new StepResult(results.size(), step.toString(), Status.FAILED, null, e.getMessage(),
+						System.currentTimeMillis() - start));
+				break;
+			}
+		}
+		skipRemaining(results);
+		return results;
+	}
+
+	private void skipRemaining(List<StepResult> results) {
+		for (int i = results.size(); i < steps.size(); i++) {
+			results.add(new StepResult(i, steps.get(i).toString(), Status.SKIPPED, null, null, 0));
+		}
+	}
+
+	private void saveScreenshots(List<StepResult> results) {
+		for (StepResult result : results) {
+			Step step = steps.get(result.getIndex());
+			if ("screenshot".equals(step.type) && result.getStatus() == Status.PASSED
+					&& result.getValue() instanceof String) {
+				File file = new File(getString("ui.screenshots.dir"),
+						String.format("%s_%s.png", step.params.get("name"), System.currentTimeMillis()));
+				ArtifactWriter.write(Base64.getMimeDecoder().decode((String) result.getValue()), file, "image/png",
+						".png");
+			}
+		}
+	}
+
+	/**
+	 * W3C locator strategy and value of the given locator
+	 */
+	private static String[] toW3CLocator(By locator) {
+		String str = locator.toString();
+		int index = str.indexOf(": ");
+		if (!str.startsWith("By.") || index < 0) {
+			throw new IllegalArgumentException(String.format("unsupported locator '%s'", str));
+		}
+		String value = str.substring(index + 2);
+		switch (str.substring(3, index)) {
+		case "id":
+			return new String[] { "id", value };
+		case "xpath":
+			return new String[] { "xpath", value };
+		case "className":
+			return new String[] { "class name", value };
+		case "name":
+			return new String[] { "name", value };
+		case "cssSelector":
+			return new String[] { "css selector", value };
+		case "tagName":
+			return new String[] { "tag name", value };
+		case "linkText":
+			return new String[] { "link text", value };
+		case "partialLinkText":
+			return new String[] { "partial link text", value };
+		case "AccessibilityId":
+			return new String[] { "accessibility id", value };
+		case "AndroidUIAutomator":
+			return new String[] { "-android uiautomator", value };
+		case "IosNsPredicate":
+			return new String[] { "-ios predicate string", value };
+		case "IosClassChain":
+			return new String[] { "-ios class chain", value };
+		default:
+			throw new IllegalArgumentException(String.format("unsupported locator '%s'", str));
+		}
+	}
+
+	@FunctionalInterface
+	private interface LocalAction {
+
+		Object run(WebDriver driver);
+	}
+
+	private static final class Step {
+
+		private final String type;
+		private final By locator;
+		private final Map<String, Object> params;
+		private final LocalAction local;
+
+		private Step(String type, By locator, Map<String, Object> params, LocalAction local) {
+			this.type = type;
+			this.locator = locator;
+			this.params = params;
+			this.local = local;
+			if (locator != null) {
+				// fail while recording rather than in the middle of the batch
+				toW3CLocator(locator);
+			}
+		}
+
+		private Map<String, Object> toJson() {
+			Map<String, Object> json = new LinkedHashMap<>();
+			json.put("type", type);
+			if (locator != null) {
+				String[] w3c = toW3CLocator(locator);
+				json.put("using", w3c[0]);
+				json.put("value", w3c[1]);
+			}
+			if (params != null) {
+				json.putAll(params);
+			}
+			return json;
+		}
+
+		@Override
+		public String toString() {
+			return locator == null ? (params == null ? type : type + params) : type + "(" + locator + ")";
+		}
+	}
+
+	@Value
+	public static class StepResult {
+
+		private final int index;
+		private final String step;
+		private final Status status;
+		/**
+		 * value returned by the step, the Base64 PNG of a screenshot step
+		 */
+		private final Object value;
+		private final String error;
+		/**
+		 * in milliseconds, measured where the step ran
+		 */
+		private final long duration;
+	}
+
+	@Value
+	public static class Result {
+
+		private final List<StepResult> steps;
+		/**
+		 * whether the steps ran in a single driver script
+		 */
+		private final boolean remote;
+		/**
+		 * in milliseconds, round trip included
+		 */
+		private final long duration;
+
+		public boolean isSuccessful() {
+			return steps.stream().allMatch(step -> step.getStatus() == Status.PASSED);
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package com.example.utils.webdriver;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openqa.selenium.WebDriver;
+
+import com.example.utils.CommonUtilities;
+import com.example.utils.ConfigManager;
+
+import io.appium.java_client.AppiumDriver;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps one Appium session alive per device across tests when
+ * 'appium.session.reuse' is enabled. Instead of a new session (and, with
+ * 'appium.reinstall_app', a full reset) for every class or method, the app
+ * under test is reset in place: terminated, optionally wiped with
+ * <code>pm clear</code> ('appium.session.reset.clear_data', android only) and
+ * activated again; web sessions get their cookies cleared. A session is only
+ * rebuilt when it no longer responds or cannot be reset.
+ */
+@Slf4j
+public final class DriverSessionPool {
+
+	private static final boolean ENABLED = ConfigManager.getBoolean("appium.session.reuse", false);
+	private static final boolean CLEAR_DATA = ConfigManager.getBoolean("appium.session.reset.clear_data", false);
+
+	private static final Map<String, PooledSession> SESSIONS = new ConcurrentHashMap<>();
+
+	private DriverSessionPool() {
+	}
+
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * Get a session on the given device, resetting and reusing the pooled one when
+	 * it is healthy and creating a new one otherwise
+	 *
+	 * @param deviceId  {@link String}
+	 * @param isAndroid {@link Boolean}
+	 * @param isWeb     {@link Boolean}
+	 * @return {@link WebDriver}
+	 */
+	public static WebDriver acquire(@NonNull String deviceId, boolean isAndroid, boolean isWeb) {
+		PooledSession session = SESSIONS.get(deviceId);
+		if (session != null) {
+			long start = System.currentTimeMillis();
+			if (session.isAndroid == isAndroid && session.isWeb == isWeb && isHealthy(session) && reset(session)) {
+				log.info("device '{}' ::: reusing appium session, reset in {} ms", deviceId,
+						System.currentTimeMillis() - start);
+				return session.driver;
+			}
+			log.warn("device '{}' ::: pooled appium session is not reusable, rebuilding it", deviceId);
+			discard(deviceId);
+		}
+		long start = System.currentTimeMillis();
+		WebDriver driver = WebDriverFactory.create(deviceId, isAndroid, isWeb);
+		if (driver != null) {
+			SESSIONS.put(deviceId, new PooledSession(deviceId, isAndroid, isWeb, driver));
+			log.info("device '{}' ::: created appium session in {} ms", deviceId, System.currentTimeMillis() - start);
+		}
+		return driver;
+	}
+
+	/**
+	 * Quit the pooled session of the given device, if any, and stop its Appium
+	 * service
+	 *
+	 * @param deviceId {@link String}
+	 */
+	public static void discard(@NonNull String deviceId) {
+		PooledSession session = SESSIONS.remove(deviceId);
+		if (session == null) {
+			return;
+		}
+		try {
+			session.driver.quit();
+		} catch (Exception e) {
+			log.debug("device '{}' ::: unable to quit appium session => {}", deviceId, e.getMessage());
+		}
+		AppiumServiceFactory.stopLocalAppiumService(deviceId);
+	}
+
+	/**
+	 * Quit every pooled session
+	 */
+	public static void quitAll() {
+		SESSIONS.keySet().forEach(DriverSessionPool::discard);
+	}
+
+	public static boolean contains(@NonNull String deviceId) {
+		return SESSIONS.containsKey(deviceId);
+	}
+
+	private static boolean isHealthy(PooledSession session) {
+		try {
+			AppiumDriver<?> driver = (AppiumDriver<?>) session.driver;
+			return driver.getSessionId() != null && driver.getSessionDetails() != null;
+		} catch (Exception e) {
+			log.warn("device '{}' ::: appium session health check failed => {}", session.deviceId, e.getMessage());
+			return false;
+		}
+	}
+
+	private static boolean reset(PooledSession session) {
+		try {
+			if (session.isWeb) {
+				session.driver.manage().deleteAllCookies();
+				return true;
+			}
+			AppiumDriver<?> driver = (AppiumDriver<?>) session.driver;
+			String appId = getAppId(session);
+			if (CommonUtilities.isBlank(appId)) {
+				log.warn("device '{}' ::: app under test is unknown, unable to reset it", session.deviceId);
+				return false;
+			}
+			driver.terminateApp(appId);
+			if (CLEAR_DATA && session.isAndroid && !ADBUtilities.clearUserData(session.deviceId, appId)) {
+				log.warn("device '{}' ::: unable to clear data of '{}'", session.deviceId, appId);
+				return false;
+			}
+			driver.activateApp(appId);
+			return true;
+		} catch (Exception e) {
+			log.warn("device '{}' ::: unable to reset appium session => {}", session.deviceId, e.getMessage());
+			return false;
+		}
+	}
+
+	private static String getAppId(PooledSession session) {
+		String capability = session.isAndroid ? "appPackage" : "bundleId";
+		Object appId = ((AppiumDriver<?>) session.driver).getCapabilities().getCapability(capability);
+		if (appId != null && !CommonUtilities.isBlank(appId.toString())) {
+			return appId.toString().trim();
+		}
+		return ConfigManager.getString(session.isAndroid ? "appium.android.app_package" : "appium.ios.bundle_id");
+	}
+
+	private static final class PooledSession {
+
+		private final String deviceId;
+		private final boolean isAndroid;
+		private final boolean isWeb;
+		private final WebDriver driver;
+
+		private PooledSession(String deviceId, boolean isAndroid, boolean isWeb, WebDriver driver) {
+			this.deviceId = deviceId;
+			this.isAndroid = isAndroid;
+			this.isWeb = isWeb;
+			this.driver = driver;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package com.example.utils.webdriver;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * Counts, per lookup method of {@link WebDriverWrapper}, how many element
+ * references the server sent back and how many of them the caller actually
+ * used. A large gap points at lookups fetching whole lists only to keep the
+ * first element.
+ */
+public final class ElementLookupMetrics {
+
+	private static final Map<String, Counters> COUNTERS = new ConcurrentHashMap<>();
+
+	private ElementLookupMetrics() {
+	}
+
+	/**
+	 * @param method  {@link String} - lookup method name
+	 * @param fetched {@link Integer} - element references returned by the server
+	 * @param used    {@link Integer} - element references handed to the caller
+	 */
+	public static void record(@NonNull String method, int fetched, int used) {
+		Counters counters = COUNTERS.computeIfAbsent(method, k -> new Counters());
+		counters.calls.increment();
+		counters.fetched.add(fetched);
+		counters.used.add(used);
+	}
+
+	/**
+	 * @return {@link Map}&lt;{@link String}, {@link Stats}&gt; - lookup method name
+	 *         to its counters, sorted by method name
+	 */
+	public static Map<String, Stats> getStats() {
+		Map<String, Stats> stats = new TreeMap<>();
+		COUNTERS.forEach((method, counters) -> stats.put(method,
+				new Stats(counters.calls.sum(), counters.fetched.sum(), counters.used.sum())));
+		return stats;
+	}
+
+	public static void reset() {
+		COUNTERS.clear();
+	}
+
+	public static String summary() {
+		StringBuilder summary = new StringBuilder("element lookups:");
+		getStats().forEach((method, stats) -> summary.append(System.lineSeparator()).append("  ").append(method)
+				.append(" => ").append(stats));
+		return summary.toString();
+	}
+
+	private static final class Counters {
+
+		private final LongAdder calls = new LongAdder();
+		private final LongAdder fetched = new LongAdder();
+		private final LongAdder used = new LongAdder();
+	}
+
+	@Value
+	public static class Stats {
+
+		private final long calls;
+		private final long fetched;
+		private final long used;
+
+		@Override
+		public String toString() {
+			return String.format("%d calls, %d elements fetched, %d used", calls, fetched, used);
+		}
+	}
+}
@@ -7,9 +7,9 @@ import static com.example.utils.CommonUtilities.splitLines;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import com.example.Platform;
 import com.example.utils.CommandLineResponse;
@@ -20,9 +20,11 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public final class IOSUtilities {
 
-	private static final Map<String, String> EMULATED_DEVICES = new ConcurrentHashMap<>();
-	private static final Map<String, String> REAL_DEVICES = new ConcurrentHashMap<>();
-	private static final Map<String, String> ALL_DEVICES = new ConcurrentHashMap<>();
+	// replaced as a whole, never modified, so that readers always see a complete
+	// lookup; empty until the devices are looked up
+	private static volatile Map<String, String> emulatedDevices = Collections.emptyMap();
+	private static volatile Map<String, String> realDevices = Collections.emptyMap();
+	private static volatile Map<String, String> allDevices = Collections.emptyMap();
 
 	private static final boolean IS_MAC = Platform.CURRENT_PLATFORM == Platform.MACINTOSH;
 
@@ -40,15 +42,43 @@ public final class IOSUtilities {
 			return Collections.emptyMap();
 		}
 
-		if (ALL_DEVICES.isEmpty()) {
+		Map<String, String> devices = allDevices;
+		if (devices.isEmpty()) {
 			synchronized (IOSUtilities.class) {
-				if (ALL_DEVICES.isEmpty()) {
-					ALL_DEVICES.putAll(getConnectedSimulators());
-					ALL_DEVICES.putAll(getConnectedRealDevices());
+				devices = allDevices;
+				if (devices.isEmpty()) {
+					devices = merge(getConnectedSimulators(), getConnectedRealDevices());
+					allDevices = devices;
 				}
 			}
 		}
-		return ALL_DEVICES;
+		return devices;
+	}
+
+	private static Map<String, String> merge(Map<String, String> simulators, Map<String, String> real) {
+		Map<String, String> devices = new HashMap<>(simulators);
+		devices.putAll(real);
+		return Collections.unmodifiableMap(devices);
+	}
+
+	/**
+	 * Look the devices up again and replace the cached ones; readers keep seeing
+	 * the previous devices until then
+	 *
+	 * @return {@link Map}&lt;&lt;{@link String}, {@link String}&gt;&gt;
+	 */
+	public static Map<String, String> refresh() {
+		if (!IS_MAC) {
+			return Collections.emptyMap();
+		}
+		synchronized (IOSUtilities.class) {
+			Map<String, String> simulators = lookUpSimulators();
+			Map<String, String> devices = lookUpRealDevices();
+			emulatedDevices = simulators;
+			realDevices = devices;
+			allDevices = merge(simulators, devices);
+			return allDevices;
+		}
 	}
 
 	/**
@@ -62,29 +92,34 @@ public final class IOSUtilities {
 			return Collections.emptyMap();
 		}
 
-		if (!EMULATED_DEVICES.isEmpty()) {
-			return EMULATED_DEVICES;
-		}
-		if (EMULATED_DEVICES.isEmpty()) {
-			String cmd = "xcrun simctl list devices | grep -i booted";
-			CommandLineResponse response = exec(cmd);
-			if (response.getExitCode() == 0) {
-				List<String> lines = splitLines(response.getStdOut());
-				if (lines != null && !lines.isEmpty()) {
-					lines.forEach(str -> {
-						List<String> txt = getMatches(str.trim(), "(?<=\\().*?(?=\\))");
-						String id = txt.size() >= 2 ? txt.get(txt.size() - 2).trim() : "";
-						EMULATED_DEVICES.put(id, str.substring(0, str.indexOf('(')).trim());
-					});
-				}
-			}
-			if (EMULATED_DEVICES.isEmpty()) {
-				log.debug("no connected emulated ios devices");
-			} else {
-				log.info("connected emulated ios devices => {}", EMULATED_DEVICES);
+		Map<String, String> devices = emulatedDevices;
+		if (devices.isEmpty()) {
+			devices = lookUpSimulators();
+			emulatedDevices = devices;
+		}
+		return devices;
+	}
+
+	private static Map<String, String> lookUpSimulators() {
+		Map<String, String> devices = new HashMap<>();
+		String cmd = "xcrun simctl list devices | grep -i booted";
+		CommandLineResponse response = exec(cmd);
+		if (response.getExitCode() == 0) {
+			List<String> lines = splitLines(response.getStdOut());
+			if (lines != null && !lines.isEmpty()) {
+				lines.forEach(str -> {
+					List<String> txt = getMatches(str.trim(), "(?<=\\().*?(?=\\))");
+					String id = txt.size() >= 2 ? txt.get(txt.size() - 2).trim() : "";
+					devices.put(id, str.substring(0, str.indexOf('(')).trim());
+				});
 			}
 		}
-		return EMULATED_DEVICES;
+		if (devices.isEmpty()) {
+			log.debug("no connected emulated ios devices");
+		} else {
+			log.info("connected emulated ios devices => {}", devices);
+		}
+		return Collections.unmodifiableMap(devices);
 	}
 
 	/**
@@ -201,27 +236,32 @@ public final class IOSUtilities {
 		if (!IS_MAC) {
 			return Collections.emptyMap();
 		}
-		if (!REAL_DEVICES.isEmpty()) {
-			return REAL_DEVICES;
-		}
-		if (REAL_DEVICES.isEmpty()) {
-			String cmd = "idevice_id -l";
-			CommandLineResponse response = exec(cmd);
-			if (response.getExitCode() == 0 && !response.getStdOut().trim().isEmpty()) {
-				List<String> lines = splitLines(response.getStdOut());
-				if (lines != null && !lines.isEmpty()) {
-					for (String str : lines) {
-						REAL_DEVICES.put(str.trim(), "Not Known");
-					}
+		Map<String, String> devices = realDevices;
+		if (devices.isEmpty()) {
+			devices = lookUpRealDevices();
+			realDevices = devices;
+		}
+		return devices;
+	}
+
+	private static Map<String, String> lookUpRealDevices() {
+		Map<String, String> devices = new HashMap<>();
+		String cmd = "idevice_id -l";
+		CommandLineResponse response = exec(cmd);
+		if (response.getExitCode() == 0 && !response.getStdOut().trim().isEmpty()) {
+			List<String> lines = splitLines(response.getStdOut());
+			if (lines != null && !lines.isEmpty()) {
+				for (String str : lines) {
+					devices.put(str.trim(), "Not Known");
 				}
 			}
-			if (REAL_DEVICES.isEmpty()) {
-				log.debug("no connected real ios devices");
-			} else {
-				log.info("connected real ios devices => {}", REAL_DEVICES);
-			}
 		}
-		return REAL_DEVICES;
+		if (devices.isEmpty()) {
+			log.debug("no connected real ios devices");
+		} else {
+			log.info("connected real ios devices => {}", devices);
+		}
+		return Collections.unmodifiableMap(devices);
 	}
 
 }
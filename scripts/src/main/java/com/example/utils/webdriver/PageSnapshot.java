@@ -0,0 +1,223 @@
+package com.example.utils.webdriver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.jsoup.Jsoup;
+import org.jsoup.helper.W3CDom;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.openqa.selenium.By;
+import org.w3c.dom.NodeList;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Immutable, indexed copy of the page hierarchy fetched with a single
+ * <code>getPageSource</code> call. Locator queries, presence checks and text
+ * reads are answered locally: ids, accessibility ids and class names through
+ * hash indexes built once, XPath (native apps only) against a W3C DOM built on
+ * first use, css, tag and link text locators through Jsoup (web only). A query
+ * the snapshot cannot answer faithfully returns <code>null</code> so that the
+ * caller can fall back to the driver.
+ */
+public final class PageSnapshot {
+
+	// shared by every user of the snapshot, not to be modified
+	@Getter
+	private final Document document;
+	@Getter
+	private final boolean web;
+	@Getter
+	private final boolean android;
+	@Getter
+	private final long createdAt = System.currentTimeMillis();
+
+	private final List<Element> elements;
+	private final Map<String, List<Element>> ids = new HashMap<>();
+	private final Map<String, List<Element>> accessibilityIds = new HashMap<>();
+	private final Map<String, List<Element>> classNames = new HashMap<>();
+	private org.w3c.dom.Document w3cDocument;
+	private Map<org.w3c.dom.Node, Element> w3cElements;
+
+	/**
+	 * @param source  {@link String} - page source
+	 * @param web     {@link Boolean} - html of a browser session rather than the
+	 *                xml hierarchy of a native app
+	 * @param android {@link Boolean}
+	 */
+	public PageSnapshot(@NonNull String source, boolean web, boolean android) {
+		this.web = web;
+		this.android = android;
+		this.document = web ? Jsoup.parse(source) : Jsoup.parse(source, "", Parser.xmlParser());
+		this.elements = document.getAllElements();
+		elements.forEach(this::index);
+	}
+
+	private void index(Element element) {
+		if (web) {
+			add(ids, element.id(), element);
+			element.classNames().forEach(name -> add(classNames, name, element));
+			return;
+		}
+		add(classNames, element.tagName(), element);
+		add(classNames, element.attr("class"), element);
+		add(classNames, element.attr("type"), element);
+		if (android) {
+			String resourceId = element.attr("resource-id");
+			add(ids, resourceId, element);
+			int index = resourceId.indexOf(":id/");
+			if (index > 0) {
+				add(ids, resourceId.substring(index + 4), element);
+			}
+			add(accessibilityIds, element.attr("content-desc"), element);
+		} else {
+			add(ids, element.attr("name"), element);
+			add(accessibilityIds, element.attr("name"), element);
+		}
+	}
+
+	private static void add(Map<String, List<Element>> index, String key, Element element) {
+		if (key != null && !key.isEmpty()) {
+			List<Element> list = index.computeIfAbsent(key, k -> new ArrayList<>());
+			if (list.isEmpty() || list.get(list.size() - 1) != element) {
+				list.add(element);
+			}
+		}
+	}
+
+	/**
+	 * Find all the elements matching the given locator, in document order
+	 *
+	 * @param locator {@link By}
+	 * @return {@link List}&lt;{@link Element}&gt; or <code>null</code> if the
+	 *         locator cannot be evaluated locally
+	 */
+	public List<Element> findAll(@NonNull By locator) {
+		String str = locator.toString();
+		int index = str.indexOf(": ");
+		if (!str.startsWith("By.") || index < 0) {
+			return null;
+		}
+		String strategy = str.substring(3, index);
+		String value = str.substring(index + 2);
+		switch (strategy) {
+		case "id":
+			return lookup(ids, value);
+		case "AccessibilityId":
+			return web ? null : lookup(accessibilityIds, value);
+		case "className":
+			return lookup(classNames, value);
+		case "xpath":
+			return web ? null : xpath(value);
+		case "name":
+			return web ? document.getElementsByAttributeValue("name", value) : null;
+		case "cssSelector":
+			return web ? document.select(value) : null;
+		case "tagName":
+			return web ? document.getElementsByTag(value) : null;
+		case "linkText":
+			return web ? filterLinks(value, false) : null;
+		case "partialLinkText":
+			return web ? filterLinks(value, true) : null;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * @param locator {@link By}
+	 * @return {@link Boolean} or <code>null</code> if the locator cannot be
+	 *         evaluated locally
+	 */
+	public Boolean isPresent(@NonNull By locator) {
+		List<Element> found = findAll(locator);
+		return found == null ? null : !found.isEmpty();
+	}
+
+	/**
+	 * Get the text of the first element matching the given locator: the
+	 * <code>text</code> attribute on android, <code>value</code> (or
+	 * <code>label</code>) on iOS and the text content on the web
+	 *
+	 * @param locator {@link By}
+	 * @return {@link String} or <code>null</code> if there is no such element or
+	 *         the locator cannot be evaluated locally
+	 */
+	public String getText(@NonNull By locator) {
+		List<Element> found = findAll(locator);
+		if (found == null || found.isEmpty()) {
+			return null;
+		}
+		Element element = found.get(0);
+		if (web) {
+			return element.text();
+		}
+		if (android) {
+			return element.attr("text");
+		}
+		return element.hasAttr("value") ? element.attr("value") : element.attr("label");
+	}
+
+	public long getAge() {
+		return System.currentTimeMillis() - createdAt;
+	}
+
+	private static List<Element> lookup(Map<String, List<Element>> index, String key) {
+		List<Element> found = index.get(key);
+		return found == null ? Collections.emptyList() : Collections.unmodifiableList(found);
+	}
+
+	private List<Element> filterLinks(String text, boolean partial) {
+		List<Element> links = new ArrayList<>();
+		for (Element link : document.getElementsByTag("a")) {
+			String linkText = link.text().trim();
+			if (partial ? linkText.contains(text) : linkText.equals(text)) {
+				links.add(link);
+			}
+		}
+		return links;
+	}
+
+	private synchronized List<Element> xpath(String expression) {
+		if (w3cElements == null) {
+			w3cDocument = new W3CDom().fromJsoup(document);
+			// both trees list their elements in document order, the jsoup one starting
+			// with the document itself
+			NodeList converted = w3cDocument.getElementsByTagName("*");
+			w3cElements = new IdentityHashMap<>();
+			if (converted.getLength() == elements.size() - 1) {
+				for (int i = 0; i < converted.getLength(); i++) {
+					w3cElements.put(converted.item(i), elements.get(i + 1));
+				}
+			}
+		}
+		if (w3cElements.isEmpty()) {
+			return null;
+		}
+		try {
+			NodeList nodes = (NodeList) XPathFactory.newInstance().newXPath().evaluate(expression, w3cDocument,
+					XPathConstants.NODESET);
+			List<Element> found = new ArrayList<>(nodes.getLength());
+			for (int i = 0; i < nodes.getLength(); i++) {
+				Element element = w3cElements.get(nodes.item(i));
+				if (element != null) {
+					found.add(element);
+				}
+			}
+			return found;
+		} catch (XPathExpressionException e) {
+			throw new IllegalArgumentException(String.format("invalid xpath '%s'", expression), e);
+		}
+	}
+}
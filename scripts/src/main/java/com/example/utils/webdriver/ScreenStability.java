@@ -0,0 +1,211 @@
+package com.example.utils.webdriver;
+
+import static com.example.utils.ConfigManager.getInt;
+import static com.example.utils.ConfigManager.getLong;
+import static com.example.utils.ConfigManager.getString;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openqa.selenium.WebDriver;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Waits for the screen to settle instead of sleeping a fixed time: samples the
+ * screen every 'ui.stable.interval' milliseconds and returns as soon as
+ * 'ui.stable.samples' consecutive samples are identical, or after the given
+ * maximum. A sample is a hash of either the page source
+ * ('ui.stable.mode = source') or a downscaled grayscale screenshot
+ * ('ui.stable.mode = screenshot', for animations that do not show in the
+ * hierarchy).
+ * <p>
+ * The maximum is what a fixed sleep would have spent, so the metrics compare
+ * the time actually waited against it.
+ */
+@Slf4j
+public final class ScreenStability {
+
+	public enum Mode {
+		SOURCE, SCREENSHOT
+	}
+
+	private static final Mode MODE = "screenshot".equalsIgnoreCase(getString("ui.stable.mode", "source").trim())
+			? Mode.SCREENSHOT
+			: Mode.SOURCE;
+	private static final int SAMPLES = Math.max(2, getInt("ui.stable.samples", 3));
+	private static final long INTERVAL = getLong("ui.stable.interval", 100);
+	private static final long MAX_WAIT = getLong("ui.stable.max_wait", 5);
+	// width of the downscaled screenshot, 16 gray levels per pixel so that
+	// compression noise does not count as a change
+	private static final int THUMBNAIL_WIDTH = 48;
+	private static final HashFunction HASH = Hashing.murmur3_128();
+
+	private static final LongAdder WAITS = new LongAdder();
+	private static final LongAdder TIMEOUTS = new LongAdder();
+	private static final LongAdder SAMPLED = new LongAdder();
+	private static final LongAdder WAITED = new LongAdder();
+	private static final LongAdder BUDGET = new LongAdder();
+
+	private ScreenStability() {
+	}
+
+	/**
+	 * @return {@link Long} - default maximum wait, in seconds
+	 *         ('ui.stable.max_wait')
+	 */
+	public static long getMaxWait() {
+		return MAX_WAIT;
+	}
+
+	/**
+	 * Wait until the screen stops changing
+	 *
+	 * @param driver     {@link WebDriver}
+	 * @param deviceId   {@link String}
+	 * @param maxSeconds {@link Long} - maximum wait, i.e. the fixed sleep this
+	 *                   replaces
+	 * @return {@link Boolean} - <code>false</code> if the screen was still
+	 *         changing after the maximum wait
+	 */
+	public static boolean await(@NonNull WebDriver driver, String deviceId, long maxSeconds) {
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.SECONDS.toNanos(maxSeconds);
+		HashCode previous = null;
+		int matching = 0;
+		int samples = 0;
+		boolean stable = false;
+		while (true) {
+			long sampleStart = System.nanoTime();
+			HashCode current = sample(driver, deviceId);
+			samples++;
+			matching = current.equals(previous) ? matching + 1 : 1;
+			previous = current;
+			if (matching >= SAMPLES) {
+				stable = true;
+				break;
+			}
+			long next = sampleStart + TimeUnit.MILLISECONDS.toNanos(INTERVAL);
+			if (next >= deadline) {
+				break;
+			}
+			long delay = next - System.nanoTime();
+			if (delay > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(delay);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+		long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		record(stable, samples, waited, TimeUnit.SECONDS.toMillis(maxSeconds));
+		if (stable) {
+			log.debug("device '{}' ::: screen stable after {} ms and {} samples", deviceId, waited, samples);
+		} else {
+			log.warn("device '{}' ::: screen still changing after {} ms and {} samples", deviceId, waited, samples);
+		}
+		return stable;
+	}
+
+	private static HashCode sample(WebDriver driver, String deviceId) {
+		if (MODE == Mode.SCREENSHOT) {
+			try {
+				// null when ImageIO cannot decode the screenshot
+				BufferedImage image = ScreenshotProvider.captureImage(driver, deviceId);
+				if (image != null) {
+					return HASH.hashBytes(thumbnail(image));
+				}
+				log.debug("device '{}' ::: unable to decode the screenshot, using the page source", deviceId);
+			} catch (RuntimeException e) {
+				log.debug("device '{}' ::: unable to sample a screenshot, using the page source => {}", deviceId,
+						e.getMessage());
+			}
+		}
+		return HASH.hashString(driver.getPageSource(), StandardCharsets.UTF_8);
+	}
+
+	private static byte[] thumbnail(BufferedImage image) {
+		int height = Math.max(1, image.getHeight() * THUMBNAIL_WIDTH / Math.max(1, image.getWidth()));
+		BufferedImage thumbnail = new BufferedImage(THUMBNAIL_WIDTH, height, BufferedImage.TYPE_BYTE_GRAY);
+		Graphics2D graphics = thumbnail.createGraphics();
+		try {
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			graphics.drawImage(image, 0, 0, THUMBNAIL_WIDTH, height, null);
+		} finally {
+			graphics.dispose();
+		}
+		byte[] pixels = ((DataBufferByte) thumbnail.getRaster().getDataBuffer()).getData();
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (byte) ((pixels[i] & 0xff) >> 4);
+		}
+		return pixels;
+	}
+
+	private static void record(boolean stable, int samples, long waited, long budget) {
+		WAITS.increment();
+		if (!stable) {
+			TIMEOUTS.increment();
+		}
+		SAMPLED.add(samples);
+		WAITED.add(waited);
+		BUDGET.add(budget);
+	}
+
+	public static Stats getStats() {
+		return new Stats(WAITS.sum(), TIMEOUTS.sum(), SAMPLED.sum(), WAITED.sum(), BUDGET.sum());
+	}
+
+	public static void reset() {
+		WAITS.reset();
+		TIMEOUTS.reset();
+		SAMPLED.reset();
+		WAITED.reset();
+		BUDGET.reset();
+	}
+
+	public static String summary() {
+		return "screen stability waits: " + getStats();
+	}
+
+	@Value
+	public static class Stats {
+
+		private final long waits;
+		/**
+		 * waits that reached the maximum with the screen still changing
+		 */
+		private final long timeouts;
+		private final long samples;
+		/**
+		 * time actually waited, in milliseconds
+		 */
+		private final long waited;
+		/**
+		 * time the replaced fixed sleeps would have spent, in milliseconds
+		 */
+		private final long budget;
+
+		public long getSaved() {
+			return budget - waited;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d waits (%d timed out), %d samples, waited %d ms instead of %d ms (%d ms saved)",
+					waits, timeouts, samples, waited, budget, getSaved());
+		}
+	}
+}
@@ -0,0 +1,317 @@
+package com.example.utils.webdriver;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+
+import com.example.Channel;
+import com.example.utils.ConfigManager;
+
+import io.appium.java_client.android.AndroidDriver;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Captures screenshots either through the driver (<code>TakesScreenshot</code>,
+ * a PNG sent as Base64 over the Appium JSON protocol) or, for android, straight
+ * from the framebuffer through <code>adb exec-out screencap</code> over the
+ * adb server socket. The source is chosen per channel with
+ * 'ui.screenshots.provider.&lt;channel&gt;' (<code>driver</code> or
+ * <code>adb</code>) and the output format with 'ui.screenshots.format'
+ * (<code>png</code> or <code>jpeg</code>). Only the capture runs on the calling
+ * thread; decoding and encoding run on a bounded worker pool.
+ */
+@Slf4j
+public final class ScreenshotProvider {
+
+	private static final float JPEG_QUALITY = ConfigManager.getInt("ui.screenshots.jpeg_quality", 80) / 100f;
+	private static final int RAW_HEADER_SIZE = 12;
+	private static final int RAW_HEADER_SIZE_WITH_COLOR_SPACE = 16;
+
+	private static final ThreadPoolExecutor ENCODERS = newExecutor();
+
+	private ScreenshotProvider() {
+	}
+
+	public enum Source {
+		DRIVER, ADB
+	}
+
+	public enum Format {
+
+		PNG("image/png", ".png"), JPEG("image/jpeg", ".jpg");
+
+		@Getter
+		private final String type;
+		@Getter
+		private final String extension;
+
+		Format(String type, String extension) {
+			this.type = type;
+			this.extension = extension;
+		}
+	}
+
+	private static ThreadPoolExecutor newExecutor() {
+		int threads = Math.max(1, ConfigManager.getInt("ui.screenshots.encoder_threads",
+				Runtime.getRuntime().availableProcessors()));
+		AtomicInteger count = new AtomicInteger();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(threads * 4), runnable -> {
+					Thread thread = new Thread(runnable, "screenshot-encoder-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Get the screenshot source configured for the given channel
+	 *
+	 * @param channel {@link Channel}
+	 * @return {@link Source}
+	 */
+	public static Source getSource(@NonNull Channel channel) {
+		String value = ConfigManager.getString("ui.screenshots.provider." + channel, "driver");
+		return "adb".equalsIgnoreCase(value.trim()) ? Source.ADB : Source.DRIVER;
+	}
+
+	public static Format getFormat() {
+		String value = ConfigManager.getString("ui.screenshots.format", "png");
+		return "jpeg".equalsIgnoreCase(value.trim()) || "jpg".equalsIgnoreCase(value.trim()) ? Format.JPEG
+				: Format.PNG;
+	}
+
+	/**
+	 * Capture a screenshot with the source and format configured for the current
+	 * channel
+	 *
+	 * @param driver   {@link WebDriver}
+	 * @param deviceId {@link String}
+	 * @return {@link Screenshot}
+	 */
+	public static Screenshot capture(@NonNull WebDriver driver, final String deviceId) {
+		return capture(getSource(Channel.getChannel()), getFormat(), driver, deviceId);
+	}
+
+	/**
+	 * Capture a screenshot. The adb source falls back to the driver for non
+	 * android sessions, when the adb server is not reachable or when the
+	 * framebuffer cannot be decoded.
+	 *
+	 * @param source   {@link Source}
+	 * @param format   {@link Format}
+	 * @param driver   {@link WebDriver}
+	 * @param deviceId {@link String}
+	 * @return {@link Screenshot}
+	 */
+	public static Screenshot capture(@NonNull Source source, @NonNull Format format, @NonNull WebDriver driver,
+			final String deviceId) {
+		long start = System.nanoTime();
+		if (source == Source.ADB && driver instanceof AndroidDriver) {
+			try {
+				byte[] raw = AdbClient.getDefault().execOut(deviceId, "screencap");
+				// decoded on the encoder pool, so check it can be before giving up the driver
+				getRawOffset(raw);
+				long captureTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+				return new Screenshot(Source.ADB, format, raw.length, captureTime,
+						CompletableFuture.supplyAsync(() -> encode(decodeRaw(raw), format), ENCODERS));
+			} catch (IOException e) {
+				log.warn("device '{}' ::: unable to capture the framebuffer through adb, using the driver => {}",
+						deviceId, e.getMessage());
+			}
+		}
+		byte[] png = ((TakesScreenshot) driver).getScreenshotAs(OutputType.BYTES);
+		long captureTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		// the driver sends the PNG as Base64 in a JSON response
+		int transferred = (png.length + 2) / 3 * 4;
+		CompletableFuture<byte[]> data = format == Format.PNG ? CompletableFuture.completedFuture(png)
+				: CompletableFuture.supplyAsync(() -> encode(decodePng(png), format), ENCODERS);
+		return new Screenshot(Source.DRIVER, format, transferred, captureTime, data);
+	}
+
+	/**
+	 * Capture a screenshot with the source configured for the current channel,
+	 * decoded on the calling thread
+	 *
+	 * @param driver   {@link WebDriver}
+	 * @param deviceId {@link String}
+	 * @return {@link BufferedImage}
+	 */
+	static BufferedImage captureImage(@NonNull WebDriver driver, final String deviceId) {
+		if (getSource(Channel.getChannel()) == Source.ADB && driver instanceof AndroidDriver) {
+			try {
+				return decodeRaw(AdbClient.getDefault().execOut(deviceId, "screencap"));
+			} catch (IOException | RuntimeException e) {
+				log.warn("device '{}' ::: unable to capture the framebuffer through adb, using the driver => {}",
+						deviceId, e.getMessage());
+			}
+		}
+		return decodePng(((TakesScreenshot) driver).getScreenshotAs(OutputType.BYTES));
+	}
+
+	private static BufferedImage decodePng(byte[] png) {
+		try {
+			return ImageIO.read(new ByteArrayInputStream(png));
+		} catch (IOException e) {
+			throw new RuntimeException("unable to decode screenshot", e);
+		}
+	}
+
+	/**
+	 * Decode the output of <code>screencap</code> without <code>-p</code>: a
+	 * little endian header (width, height, pixel format and, since android 9,
+	 * color space) followed by the raw pixels
+	 */
+	static BufferedImage decodeRaw(byte[] raw) {
+		int offset;
+		try {
+			offset = getRawOffset(raw);
+		} catch (IOException e) {
+			throw new RuntimeException("unable to decode screenshot", e);
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN);
+		int width = buffer.getInt(0);
+		int height = buffer.getInt(4);
+		int pixelFormat = buffer.getInt(8);
+		int bytesPerPixel = getBytesPerPixel(pixelFormat);
+		int[] pixels = new int[width * height];
+		for (int i = 0, p = offset; i < pixels.length; i++, p += bytesPerPixel) {
+			if (pixelFormat == 4) {
+				// RGB_565, 5 bits of red, 6 of green and 5 of blue in a little endian short
+				int rgb = buffer.getShort(p) & 0xffff;
+				int red = (rgb >> 11) & 0x1f;
+				int green = (rgb >> 5) & 0x3f;
+				int blue = rgb & 0x1f;
+				pixels[i] = ((red << 3 | red >> 2) << 16) | ((green << 2 | green >> 4) << 8) | (blue << 3 | blue >> 2);
+				continue;
+			}
+			int first = raw[p] & 0xff;
+			int second = raw[p + 1] & 0xff;
+			int third = raw[p + 2] & 0xff;
+			// BGRA_8888 (5) stores blue first, the other formats red first
+			pixels[i] = pixelFormat == 5 ? (third << 16) | (second << 8) | first
+					: (first << 16) | (second << 8) | third;
+		}
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		image.setRGB(0, 0, width, height, pixels, 0, width);
+		return image;
+	}
+
+	/**
+	 * Check the header of a <code>screencap</code> output against its length
+	 *
+	 * @return {@link Integer} - offset of the pixels
+	 * @throws IOException if the output is not a framebuffer that can be decoded,
+	 *                     e.g. an error message
+	 */
+	private static int getRawOffset(byte[] raw) throws IOException {
+		if (raw.length < RAW_HEADER_SIZE) {
+			throw new IOException(String.format("screencap output of %d bytes is too short", raw.length));
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN);
+		long width = buffer.getInt(0);
+		long height = buffer.getInt(4);
+		int pixelFormat = buffer.getInt(8);
+		int bytesPerPixel = getBytesPerPixel(pixelFormat);
+		if (bytesPerPixel == 0) {
+			throw new IOException("unsupported screencap pixel format " + pixelFormat);
+		}
+		long size = width * height * bytesPerPixel;
+		if (width <= 0 || height <= 0 || raw.length < RAW_HEADER_SIZE + size) {
+			throw new IOException(String.format("screencap output of %d bytes does not hold a %dx%d image",
+					raw.length, width, height));
+		}
+		return raw.length >= RAW_HEADER_SIZE_WITH_COLOR_SPACE + size ? RAW_HEADER_SIZE_WITH_COLOR_SPACE
+				: RAW_HEADER_SIZE;
+	}
+
+	/**
+	 * @return {@link Integer} - bytes per pixel of the given android pixel
+	 *         format, 0 if not supported
+	 */
+	private static int getBytesPerPixel(int pixelFormat) {
+		switch (pixelFormat) {
+		case 1: // RGBA_8888
+		case 2: // RGBX_8888
+		case 5: // BGRA_8888
+			return 4;
+		case 3: // RGB_888
+			return 3;
+		case 4: // RGB_565
+			return 2;
+		default:
+			return 0;
+		}
+	}
+
+	private static byte[] encode(BufferedImage image, Format format) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			if (format == Format.PNG) {
+				ImageIO.write(image, "png", out);
+				return out.toByteArray();
+			}
+			BufferedImage rgb = image;
+			if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+				rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+				rgb.createGraphics().drawImage(image, 0, 0, null);
+			}
+			Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+			ImageWriter writer = writers.next();
+			try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+				ImageWriteParam param = writer.getDefaultWriteParam();
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				param.setCompressionQuality(JPEG_QUALITY);
+				writer.setOutput(stream);
+				writer.write(null, new IIOImage(rgb, null, null), param);
+			} finally {
+				writer.dispose();
+			}
+			return out.toByteArray();
+		} catch (IOException e) {
+			throw new RuntimeException("unable to encode screenshot", e);
+		}
+	}
+
+	@Value
+	public static class Screenshot {
+
+		private final Source source;
+		private final Format format;
+		/**
+		 * bytes sent from the device (or Appium) to the test process
+		 */
+		private final int transferredBytes;
+		/**
+		 * time the calling thread spent capturing, in milliseconds
+		 */
+		private final long captureTime;
+		/**
+		 * encoded image, completed on the encoder pool
+		 */
+		private final CompletableFuture<byte[]> data;
+	}
+}
@@ -0,0 +1,271 @@
+package com.example.utils.webdriver;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.UnsupportedCommandException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.interactions.Interactive;
+import org.openqa.selenium.interactions.Pause;
+import org.openqa.selenium.interactions.PointerInput;
+import org.openqa.selenium.interactions.PointerInput.Kind;
+import org.openqa.selenium.interactions.PointerInput.MouseButton;
+import org.openqa.selenium.interactions.PointerInput.Origin;
+import org.openqa.selenium.interactions.Sequence;
+
+import com.example.Channel;
+import com.example.ScrollDirection;
+
+import io.appium.java_client.MobileBy;
+import io.appium.java_client.android.AndroidDriver;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Scrolls with as few commands as possible:
+ * <ul>
+ * <li>mobile web: one <code>window.scrollBy</code> and, to reach an element,
+ * one <code>scrollIntoView</code> once it is in the DOM</li>
+ * <li>android: one <code>mobile: scrollGesture</code> covering all the swipes
+ * and, to reach an element, one <code>UiScrollable.scrollIntoView</code>
+ * lookup run on the device</li>
+ * <li>otherwise (iOS, or when the above are not supported): all the swipes in
+ * a single W3C Actions payload</li>
+ * </ul>
+ * The window size is fetched once per session.
+ */
+@Slf4j
+public final class ScrollEngine {
+
+	/**
+	 * length of one swipe, in pixels
+	 */
+	public static final int SWIPE_LENGTH = 500;
+	private static final Duration SWIPE_DURATION = Duration.ofMillis(250);
+	private static final Duration PRESS_DURATION = Duration.ofMillis(100);
+	private static final Channel CHANNEL = Channel.getChannel();
+
+	private static final Map<WebDriver, Dimension> WINDOW_SIZES = new WeakHashMap<>();
+	private static final Set<WebDriver> NO_SCROLL_GESTURE = Collections.newSetFromMap(new WeakHashMap<>());
+
+	private ScrollEngine() {
+	}
+
+	/**
+	 * Get the window size of the given session, fetched once
+	 *
+	 * @param driver {@link WebDriver}
+	 * @return {@link Dimension}
+	 */
+	public static Dimension getWindowSize(@NonNull WebDriver driver) {
+		synchronized (WINDOW_SIZES) {
+			return WINDOW_SIZES.computeIfAbsent(driver, d -> d.manage().window().getSize());
+		}
+	}
+
+	/**
+	 * Forget the cached window size of the given session, e.g. after a rotation
+	 *
+	 * @param driver {@link WebDriver}
+	 */
+	public static void invalidate(@NonNull WebDriver driver) {
+		synchronized (WINDOW_SIZES) {
+			WINDOW_SIZES.remove(driver);
+		}
+	}
+
+	/**
+	 * Swipe the given number of times in the given direction
+	 *
+	 * @param driver    {@link WebDriver}
+	 * @param direction {@link ScrollDirection} - direction of the finger
+	 * @param times     {@link Integer}
+	 */
+	public static void scroll(@NonNull WebDriver driver, @NonNull ScrollDirection direction, int times) {
+		int _times = Math.max(1, times);
+		int dx = getDeltaX(direction) * _times;
+		int dy = getDeltaY(direction) * _times;
+		if (CHANNEL == Channel.MOBILE_WEB) {
+			// swiping up reveals the content below
+			((JavascriptExecutor) driver).executeScript("window.scrollBy(arguments[0], arguments[1])", -dx, -dy);
+			return;
+		}
+		if (driver instanceof AndroidDriver && scrollGesture(driver, direction, _times)) {
+			return;
+		}
+		swipe(driver, direction, _times);
+	}
+
+	/**
+	 * Scroll until an element matching the given locator is present. On android,
+	 * for the locators UiAutomator can match, the search is left to
+	 * <code>UiScrollable.scrollIntoView</code>, which rewinds the scrollable
+	 * container to its beginning and then scrolls forward: only the orientation
+	 * of the direction is used and the element is found on either side, in up to
+	 * twice maxSwipes swipes. On the web the page scrolls straight to the
+	 * element.
+	 *
+	 * @param driver    {@link WebDriver}
+	 * @param locator   {@link By}
+	 * @param direction {@link ScrollDirection} - direction of the finger
+	 * @param maxSwipes {@link Integer}
+	 * @return {@link WebElement} or <code>null</code> if not found
+	 */
+	public static WebElement scrollUntilPresent(@NonNull WebDriver driver, @NonNull By locator,
+			@NonNull ScrollDirection direction, int maxSwipes) {
+		if (CHANNEL == Channel.MOBILE_WEB) {
+			List<WebElement> elements = driver.findElements(locator);
+			if (!elements.isEmpty()) {
+				((JavascriptExecutor) driver).executeScript("arguments[0].scrollIntoView({block: 'center'})",
+						elements.get(0));
+				return elements.get(0);
+			}
+		} else if (driver instanceof AndroidDriver) {
+			String selector = toUiSelector(locator);
+			if (selector != null) {
+				return scrollIntoView(driver, locator, selector, direction, maxSwipes);
+			}
+		}
+		for (int i = 0; i <= maxSwipes; i++) {
+			List<WebElement> elements = driver.findElements(locator);
+			if (!elements.isEmpty()) {
+				return elements.get(0);
+			}
+			if (i < maxSwipes) {
+				scroll(driver, direction, 1);
+			}
+		}
+		return null;
+	}
+
+	private static WebElement scrollIntoView(WebDriver driver, By locator, String selector,
+			ScrollDirection direction, int maxSwipes) {
+		boolean horizontal = direction == ScrollDirection.LEFT || direction == ScrollDirection.RIGHT;
+		String expression = String.format("new UiScrollable(new UiSelector().scrollable(true))%s"
+				+ ".setMaxSearchSwipes(%d).scrollIntoView(%s)", horizontal ? ".setAsHorizontalList()" : "",
+				maxSwipes, selector);
+		try {
+			return driver.findElement(MobileBy.AndroidUIAutomator(expression));
+		} catch (NoSuchElementException e) {
+			// no scrollable container on screen, the element may still be there
+			List<WebElement> elements = driver.findElements(locator);
+			return elements.isEmpty() ? null : elements.get(0);
+		}
+	}
+
+	private static boolean scrollGesture(WebDriver driver, ScrollDirection direction, int times) {
+		synchronized (NO_SCROLL_GESTURE) {
+			if (NO_SCROLL_GESTURE.contains(driver)) {
+				return false;
+			}
+		}
+		Dimension size = getWindowSize(driver);
+		boolean horizontal = direction == ScrollDirection.LEFT || direction == ScrollDirection.RIGHT;
+		// keep clear of the status and navigation bars
+		int left = (int) (size.getWidth() * 0.1);
+		int top = (int) (size.getHeight() * 0.2);
+		int width = (int) (size.getWidth() * 0.8);
+		int height = (int) (size.getHeight() * 0.6);
+		Map<String, Object> args = new HashMap<>();
+		args.put("left", left);
+		args.put("top", top);
+		args.put("width", width);
+		args.put("height", height);
+		// the gesture takes the direction of the content, opposite to the finger
+		args.put("direction", direction == ScrollDirection.UP ? "down"
+				: direction == ScrollDirection.DOWN ? "up" : direction == ScrollDirection.LEFT ? "right" : "left");
+		// beyond 100% the server splits the gesture into consecutive swipes
+		args.put("percent", (double) SWIPE_LENGTH * times / (horizontal ? width : height));
+		try {
+			((JavascriptExecutor) driver).executeScript("mobile: scrollGesture", args);
+			return true;
+		} catch (WebDriverException e) {
+			if (!isUnsupported(e)) {
+				throw e;
+			}
+			log.debug("'mobile: scrollGesture' is not supported, swiping instead => {}", e.getMessage());
+			synchronized (NO_SCROLL_GESTURE) {
+				NO_SCROLL_GESTURE.add(driver);
+			}
+			return false;
+		}
+	}
+
+	private static boolean isUnsupported(WebDriverException e) {
+		String message = String.valueOf(e.getMessage()).toLowerCase();
+		return e instanceof UnsupportedCommandException || message.contains("unknown mobile command")
+				|| message.contains("unknown command") || message.contains("unknown method");
+	}
+
+	private static void swipe(WebDriver driver, ScrollDirection direction, int times) {
+		Dimension size = getWindowSize(driver);
+		int startX = size.getWidth() / 2;
+		int startY = size.getHeight() / 2;
+		int endX = Math.max(0, Math.min(size.getWidth() - 1, startX + getDeltaX(direction)));
+		int endY = Math.max(0, Math.min(size.getHeight() - 1, startY + getDeltaY(direction)));
+		PointerInput finger = new PointerInput(Kind.TOUCH, "finger");
+		Sequence swipes = new Sequence(finger, 0);
+		for (int i = 0; i < times; i++) {
+			swipes.addAction(finger.createPointerMove(Duration.ZERO, Origin.viewport(), startX, startY));
+			swipes.addAction(finger.createPointerDown(MouseButton.LEFT.asArg()));
+			swipes.addAction(new Pause(finger, PRESS_DURATION));
+			swipes.addAction(finger.createPointerMove(SWIPE_DURATION, Origin.viewport(), endX, endY));
+			swipes.addAction(finger.createPointerUp(MouseButton.LEFT.asArg()));
+		}
+		((Interactive) driver).perform(Collections.singletonList(swipes));
+	}
+
+	private static int getDeltaX(ScrollDirection direction) {
+		return direction == ScrollDirection.LEFT ? -SWIPE_LENGTH
+				: direction == ScrollDirection.RIGHT ? SWIPE_LENGTH : 0;
+	}
+
+	private static int getDeltaY(ScrollDirection direction) {
+		return direction == ScrollDirection.UP ? -SWIPE_LENGTH
+				: direction == ScrollDirection.DOWN ? SWIPE_LENGTH : 0;
+	}
+
+	/**
+	 * UiSelector expression equivalent to the given locator, <code>null</code>
+	 * if there is none
+	 */
+	private static String toUiSelector(By locator) {
+		String str = locator.toString();
+		int index = str.indexOf(": ");
+		if (!str.startsWith("By.") || index < 0) {
+			return null;
+		}
+		String value = str.substring(index + 2);
+		switch (str.substring(3, index)) {
+		case "id":
+			if (value.contains(":id/")) {
+				return String.format("new UiSelector().resourceId(\"%s\")", escape(value));
+			}
+			return value.matches("\\w+") ? String.format("new UiSelector().resourceIdMatches(\".*:id/%s\")", value)
+					: null;
+		case "AccessibilityId":
+			return String.format("new UiSelector().description(\"%s\")", escape(value));
+		case "className":
+			return String.format("new UiSelector().className(\"%s\")", escape(value));
+		case "AndroidUIAutomator":
+			return value.trim().startsWith("new UiSelector()") ? value.trim() : null;
+		default:
+			return null;
+		}
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+}
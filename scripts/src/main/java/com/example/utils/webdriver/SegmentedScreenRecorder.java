@@ -0,0 +1,197 @@
+package com.example.utils.webdriver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+
+import com.example.utils.CommandLineExecutor;
+import com.example.utils.CommandLineResponse;
+import com.example.utils.CommonUtilities;
+import com.example.utils.ConfigManager;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Screen recorder for android devices keeping only the last
+ * 'ui.record_video.segments.window' seconds of the screen. A shell loop on the
+ * device records back to back <code>screenrecord</code> segments of
+ * 'ui.record_video.segments.length' seconds and deletes the oldest segment as
+ * soon as it falls out of the window. Nothing leaves the device unless the
+ * recording is kept: the segments are then pulled and concatenated with
+ * ffmpeg when it is installed, or returned one by one otherwise.
+ */
+@Slf4j
+public final class SegmentedScreenRecorder {
+
+	private static final String DEVICE_DIRECTORY = "/data/local/tmp/segmented-recordings/";
+	private static final long SEGMENT_LENGTH = Math.max(1,
+			ConfigManager.getLong("ui.record_video.segments.length", 10));
+	private static final long WINDOW = Math.max(SEGMENT_LENGTH,
+			ConfigManager.getLong("ui.record_video.segments.window", 30));
+	private static final long STOP_TIMEOUT = 10;
+
+	private static final Map<String, Recording> RECORDINGS = new ConcurrentHashMap<>();
+
+	private SegmentedScreenRecorder() {
+	}
+
+	public static boolean isEnabled() {
+		return ConfigManager.getBoolean("ui.record_video.segments", false);
+	}
+
+	public static boolean isRecording(@NonNull String deviceId) {
+		return RECORDINGS.containsKey(deviceId);
+	}
+
+	/**
+	 * Start recording the screen of the given device. A recording already running
+	 * on the device is discarded first.
+	 *
+	 * @param deviceId {@link String}
+	 * @return {@link Boolean} - whether the recording started
+	 */
+	public static boolean start(@NonNull String deviceId) {
+		if (isRecording(deviceId)) {
+			stop(deviceId, null);
+		}
+		String directory = DEVICE_DIRECTORY + UUID.randomUUID().toString();
+		long segments = (WINDOW + SEGMENT_LENGTH - 1) / SEGMENT_LENGTH + 1;
+		String loop = String.format(
+				"i=0; while true; do rm -f %1$s/$((i-%2$d)).mp4; "
+						+ "screenrecord --time-limit %3$d %1$s/$i.mp4; i=$((i+1)); done",
+				directory, segments, SEGMENT_LENGTH);
+		CommandLineResponse response = ADBUtilities.shell(deviceId, String.format(
+				"mkdir -p %s && (nohup sh -c '%s' </dev/null >/dev/null 2>&1 & echo $!)", directory, loop));
+		if (response == null || response.getExitCode() != 0 || !response.getStdOut().trim().matches("\\d+")) {
+			log.error("device '{}' ::: unable to start segmented screen recording => {}", deviceId,
+					response == null ? null : response.getStdOut());
+			return false;
+		}
+		RECORDINGS.put(deviceId, new Recording(directory, response.getStdOut().trim()));
+		log.debug("device '{}' ::: recording the last {} seconds of the screen into '{}'", deviceId, WINDOW,
+				directory);
+		return true;
+	}
+
+	/**
+	 * Stop recording the screen of the given device
+	 *
+	 * @param deviceId {@link String}
+	 * @param file     {@link File} - where to save the recording,
+	 *                 <code>null</code> to discard it
+	 * @return {@link List}&lt;{@link File}&gt; - the saved video, or its segments
+	 *         in order when they could not be concatenated; empty when discarded
+	 */
+	public static List<File> stop(@NonNull String deviceId, final File file) {
+		Recording recording = RECORDINGS.remove(deviceId);
+		if (recording == null) {
+			return Collections.emptyList();
+		}
+		// stop the loop first, then let the running screenrecord finalize its segment; the
+		// bracket keeps the pattern from matching the shell running this very command
+		String pattern = "'[s]creenrecord .*" + recording.directory + "'";
+		ADBUtilities.shell(deviceId, String.format("kill %s; pkill -INT -f %s; t=0; "
+				+ "while pgrep -f %s >/dev/null && [ $t -lt %d ]; do sleep 0.2; t=$((t+1)); done", recording.pid,
+				pattern, pattern, STOP_TIMEOUT * 5));
+		try {
+			return file == null ? Collections.emptyList() : save(deviceId, recording, file);
+		} finally {
+			ADBUtilities.shell(deviceId, "rm -rf " + recording.directory);
+		}
+	}
+
+	/**
+	 * Discard every running recording
+	 */
+	public static void stopAll() {
+		RECORDINGS.keySet().forEach(deviceId -> stop(deviceId, null));
+	}
+
+	private static List<File> save(String deviceId, Recording recording, File file) {
+		CommandLineResponse response = ADBUtilities.shell(deviceId, "ls " + recording.directory);
+		if (response == null || response.getExitCode() != 0 || CommonUtilities.isBlank(response.getStdOut())) {
+			log.warn("device '{}' ::: no screen recording segment found", deviceId);
+			return Collections.emptyList();
+		}
+		List<String> segments = CommonUtilities.splitLines(response.getStdOut().trim()).stream().map(String::trim)
+				.filter(name -> name.matches("\\d+\\.mp4"))
+				.sorted(Comparator.comparingInt(name -> Integer.parseInt(name.substring(0, name.indexOf('.')))))
+				.collect(Collectors.toList());
+
+		long start = System.currentTimeMillis();
+		File directory = new File(file.getParentFile(), file.getName() + ".segments");
+		List<File> pulled = new ArrayList<>();
+		for (String segment : segments) {
+			File local = new File(directory, segment);
+			try {
+				AdbClient.getDefault().pull(deviceId, recording.directory + "/" + segment, local);
+				pulled.add(local);
+			} catch (IOException e) {
+				log.warn("device '{}' ::: unable to pull screen recording segment '{}' => {}", deviceId, segment,
+						e.getMessage());
+			}
+		}
+		log.debug("device '{}' ::: pulled {} screen recording segments in {} ms", deviceId, pulled.size(),
+				System.currentTimeMillis() - start);
+		if (pulled.isEmpty()) {
+			return Collections.emptyList();
+		}
+		if (concat(pulled, file)) {
+			FileUtils.deleteQuietly(directory);
+			return Collections.singletonList(file);
+		}
+		return pulled;
+	}
+
+	private static boolean concat(List<File> segments, File file) {
+		if (segments.size() == 1) {
+			return segments.get(0).renameTo(file);
+		}
+		File ffmpeg = CommonUtilities.findLocalExecutable("ffmpeg");
+		if (ffmpeg == null) {
+			log.debug("ffmpeg is not installed, keeping {} separate screen recording segments", segments.size());
+			return false;
+		}
+		File list = new File(segments.get(0).getParentFile(), "segments.txt");
+		try {
+			Files.write(list.toPath(), segments.stream().map(segment -> "file '" + segment.getAbsolutePath() + "'")
+					.collect(Collectors.toList()), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			log.warn("unable to write the ffmpeg segment list => {}", e.getMessage());
+			return false;
+		}
+		CommandLineResponse response = CommandLineExecutor.execCommand(STOP_TIMEOUT * 6, TimeUnit.SECONDS,
+				ffmpeg.getAbsolutePath(), "-y", "-loglevel", "error", "-f", "concat", "-safe", "0", "-i",
+				list.getAbsolutePath(), "-c", "copy", file.getAbsolutePath());
+		if (response == null || response.getExitCode() != 0) {
+			log.warn("unable to concatenate screen recording segments => {}",
+					response == null ? null : response.getErrOut());
+			return false;
+		}
+		return true;
+	}
+
+	private static final class Recording {
+
+		private final String directory;
+		private final String pid;
+
+		private Recording(String directory, String pid) {
+			this.directory = directory;
+			this.pid = pid;
+		}
+	}
+}
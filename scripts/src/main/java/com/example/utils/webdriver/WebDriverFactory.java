@@ -43,7 +43,6 @@ import static org.openqa.selenium.remote.CapabilityType.PLATFORM_NAME;
 import java.io.File;
 import java.net.URL;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import org.openqa.selenium.WebDriver;
@@ -54,6 +53,7 @@ import org.openqa.selenium.remote.CapabilityType;
 import org.openqa.selenium.remote.DesiredCapabilities;
 
 import com.example.utils.CommandLineResponse;
+import com.example.utils.PortAllocator;
 
 import io.appium.java_client.AppiumDriver;
 import io.appium.java_client.MobileElement;
@@ -96,9 +96,8 @@ class MobileCapabilitiesFactory {
 	private static final String ENABLE_PERFORMANCE_LOGGING_CAPABILITY = "enablePerformanceLogging";
 	private static final String DEFAULT_XCODE_VERSION = "9.3";
 
-	private static final AtomicInteger IOS_WDA_PORT = new AtomicInteger(getInt("appium.ios.port.wda_agent"));
-	private static final AtomicInteger ANDROID_SYSTEM_PORT = new AtomicInteger(
-			getInt("appium.android.port.system_port"));
+	private static final int IOS_WDA_PORT = getInt("appium.ios.port.wda_agent", 4423);
+	private static final int ANDROID_SYSTEM_PORT = getInt("appium.android.port.system_port", 4523);
 	private static final String XCODE_VERSION = getLocalIOSSDKVersion();
 
 	private MobileCapabilitiesFactory() {
@@ -192,7 +191,8 @@ class MobileCapabilitiesFactory {
 		capabilities.setCapability(PRINT_PAGE_SOURCE_ON_FIND_FAILURE_CAPABILITY, false);
 		capabilities.setCapability(PLATFORM_VERSION, XCODE_VERSION);
 		capabilities.setCapability("useJSONSource", true);
-		capabilities.setCapability(IOSMobileCapabilityType.WDA_LOCAL_PORT, IOS_WDA_PORT.getAndIncrement());
+		capabilities.setCapability(IOSMobileCapabilityType.WDA_LOCAL_PORT,
+				PortAllocator.lease(IOS_WDA_PORT, AppiumServiceFactory.getSessionPortOwner(deviceId)));
 
 		if (isRealDevice) {
 			String xcodeOrgId = getString("appium.ios.xcode_org_id");
@@ -221,7 +221,23 @@ class MobileCapabilitiesFactory {
 			capabilities.setCapability(NO_RESET, !isReInstallApp);
 
 			String appPath = getString("appium.android.app_path");
-			if (!isBlank(appPath)) {
+			String appPackage = getString("appium.android.app_package");
+			if (isReInstallApp && isBlank(appPath)) {
+				throw new RuntimeException(
+						"'appium.android.app_path' is required when 'appium.reinstall_app' is set to true");
+			}
+			if (AppInstallManager.isEnabled() && !isBlank(appPath) && !appPath.startsWith("http")
+					&& !isBlank(appPackage)) {
+				if (!AppInstallManager.install(deviceId, appPath, appPackage)) {
+					throw new RuntimeException(String.format("unable to install '%s' on device '%s'", appPath.trim(),
+							deviceId));
+				}
+				capabilities.setCapability(FULL_RESET, false);
+				capabilities.setCapability(NO_RESET, true);
+				if (isReInstallApp) {
+					ADBUtilities.clearUserData(deviceId, appPackage.trim());
+				}
+			} else if (!isBlank(appPath)) {
 				if (!appPath.startsWith("http")) {
 					File appFile = new File(appPath.trim());
 					if (!appFile.exists()) {
@@ -234,12 +250,7 @@ class MobileCapabilitiesFactory {
 					capabilities.setCapability(APP, appPath.trim());
 				}
 			}
-			if (isReInstallApp && isBlank(appPath)) {
-				throw new RuntimeException(
-						"'appium.android.app_path' is required when 'appium.reinstall_app' is set to true");
-			}
 
-			String appPackage = getString("appium.android.app_package");
 			if (appPackage != null) {
 				capabilities.setCapability(APP_PACKAGE, appPackage);
 				if (getBoolean("appium.android.wipe_user_data")) {
@@ -279,7 +290,8 @@ class MobileCapabilitiesFactory {
 		capabilities.setCapability(DONT_STOP_APP_ON_RESET, true);
 		capabilities.setCapability(CapabilityType.LOGGING_PREFS, getLogPreferences());
 		capabilities.setCapability("clearDeviceLogsOnStart", true);
-		capabilities.setCapability(SYSTEM_PORT, ANDROID_SYSTEM_PORT.getAndIncrement());
+		capabilities.setCapability(SYSTEM_PORT,
+				PortAllocator.lease(ANDROID_SYSTEM_PORT, AppiumServiceFactory.getSessionPortOwner(deviceId)));
 		capabilities.setCapability(AndroidMobileCapabilityType.SKIP_DEVICE_INITIALIZATION,
 				getBoolean("appium.android.skip_device_init"));
 		capabilities.setCapability("skipServerInstallation", getBoolean("appium.android.skip_server_init"));
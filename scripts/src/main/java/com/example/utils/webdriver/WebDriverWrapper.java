@@ -2,27 +2,27 @@ package com.example.utils.webdriver;
 
 import static com.example.utils.ConfigManager.getBoolean;
 import static com.example.utils.ConfigManager.getInt;
+import static com.example.utils.ConfigManager.getLong;
 import static com.example.utils.ConfigManager.getString;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.parser.Parser;
 import org.openqa.selenium.By;
-import org.openqa.selenium.Dimension;
 import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.NoSuchElementException;
-import org.openqa.selenium.OutputType;
 import org.openqa.selenium.StaleElementReferenceException;
-import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.TimeoutException;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.support.ui.ExpectedCondition;
@@ -31,15 +31,15 @@ import org.openqa.selenium.support.ui.WebDriverWait;
 
 import com.example.Channel;
 import com.example.ScrollDirection;
-import com.google.common.io.Files;
+import com.example.utils.ArtifactWriter;
+import com.example.utils.ConfigManager;
+import com.example.utils.webdriver.ScreenshotProvider.Format;
+import com.example.utils.webdriver.ScreenshotProvider.Screenshot;
 
 import io.appium.java_client.AppiumDriver;
 import io.appium.java_client.android.AndroidDriver;
 import io.appium.java_client.android.nativekey.AndroidKey;
 import io.appium.java_client.android.nativekey.KeyEvent;
-import io.appium.java_client.touch.WaitOptions;
-import io.appium.java_client.touch.offset.PointOption;
-import io.qameta.allure.Allure;
 import io.qameta.allure.Step;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
@@ -47,10 +47,25 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public final class WebDriverWrapper {
 
-	private static final long MAX_TIMEOUT = getInt("ui.timeout");
+	private static volatile long maxTimeout = getInt("ui.timeout");
+	private static final int MAX_SWIPES = 20;
+	private static volatile long snapshotMaxAge = getLong("ui.snapshot.max_age", 1000);
 	private final WebDriver driver;
 	private final String deviceId;
 	private static final Channel CHANNEL = Channel.getChannel();
+	// shared by every page object wrapping the same driver, so that a click through
+	// one page invalidates the snapshot seen by the others
+	private static final Map<WebDriver, PageSnapshot> SNAPSHOTS = new WeakHashMap<>();
+
+	static {
+		ConfigManager.subscribe(change -> {
+			if (change.contains("ui.timeout", "ui.snapshot.max_age")) {
+				maxTimeout = getInt("ui.timeout");
+				snapshotMaxAge = getLong("ui.snapshot.max_age", 1000);
+				log.info("timeout set to {} seconds, snapshot max age to {} ms", maxTimeout, snapshotMaxAge);
+			}
+		});
+	}
 
 	public WebDriverWrapper(WebDriver driver, String deviceId) {
 		this.driver = driver;
@@ -58,35 +73,74 @@ public final class WebDriverWrapper {
 	}
 
 	public WebElement findElement(@NonNull By locator) {
-		return findElement(locator, MAX_TIMEOUT);
+		return findElement(locator, maxTimeout);
 	}
 
+	/**
+	 * Wait for the first element matching the given locator. Only that element
+	 * is fetched from the server.
+	 *
+	 * @param locator {@link By}
+	 * @param timeout {@link Long} - in seconds
+	 * @return {@link WebElement} or <code>null</code> if not found in time
+	 */
 	public WebElement findElement(@NonNull By locator, long timeout) {
-		List<WebElement> elements = findElements(locator, timeout);
-		if (!elements.isEmpty()) {
-			WebElement elm = elements.get(0);
-			if (CHANNEL == Channel.MOBILE_WEB) {
-				((JavascriptExecutor) driver).executeScript("arguments[0].scrollIntoView(false)", elm);
-			}
-			return elm;
+		WebElement elm = null;
+		try {
+			elm = until(ExpectedConditions.presenceOfElementLocated(locator), timeout);
+		} catch (Exception e) {
+			log.error(String.format("device '%s' ::: error occurred while calling findElement(%s)", deviceId, locator),
+					e);
 		}
-		return null;
+		ElementLookupMetrics.record("findElement", elm == null ? 0 : 1, elm == null ? 0 : 1);
+		return scrollIntoView(elm);
+	}
+
+	/**
+	 * Wait for all the elements matching the given locator and return the first
+	 * one, i.e. the former behavior of {@link #findElement(By, long)}, for the
+	 * callers relying on the whole list being present
+	 *
+	 * @param locator {@link By}
+	 * @param timeout {@link Long} - in seconds
+	 * @return {@link WebElement} or <code>null</code> if not found in time
+	 */
+	public WebElement findElementFromAll(@NonNull By locator, long timeout) {
+		List<WebElement> elements = Collections.emptyList();
+		try {
+			elements = until(ExpectedConditions.presenceOfAllElementsLocatedBy(locator), timeout);
+		} catch (Exception e) {
+			log.error(String.format("device '%s' ::: error occurred while calling findElementFromAll(%s)", deviceId,
+					locator), e);
+		}
+		ElementLookupMetrics.record("findElementFromAll", elements.size(), elements.isEmpty() ? 0 : 1);
+		return scrollIntoView(elements.isEmpty() ? null : elements.get(0));
+	}
+
+	private WebElement scrollIntoView(WebElement elm) {
+		if (elm != null && CHANNEL == Channel.MOBILE_WEB) {
+			((JavascriptExecutor) driver).executeScript("arguments[0].scrollIntoView(false)", elm);
+			invalidateSnapshot();
+		}
+		return elm;
 	}
 
 	@Step
 	public List<WebElement> findElements(@NonNull By locator) {
-		return findElements(locator, MAX_TIMEOUT);
+		return findElements(locator, maxTimeout);
 	}
 
 	@Step
 	public List<WebElement> findElements(@NonNull By locator, long timeout) {
+		List<WebElement> elements = Collections.emptyList();
 		try {
-			return until(ExpectedConditions.presenceOfAllElementsLocatedBy(locator), timeout);
+			elements = until(ExpectedConditions.presenceOfAllElementsLocatedBy(locator), timeout);
 		} catch (Exception e) {
 			log.error(String.format("device '%s' ::: error occurred while calling findElements(%s)", deviceId, locator),
 					e);
-			return Collections.emptyList();
 		}
+		ElementLookupMetrics.record("findElements", elements.size(), elements.size());
+		return elements;
 	}
 
 	@Step
@@ -94,6 +148,7 @@ public final class WebDriverWrapper {
 		try {
 			WebElement elm = findElement(locator);
 			if (elm != null && elm.isEnabled()) {
+				invalidateSnapshot();
 				elm.click();
 			} else {
 				log.error("unable to find or click element '{}'", locator);
@@ -104,7 +159,7 @@ public final class WebDriverWrapper {
 	}
 
 	public boolean isPresent(@NonNull By locator) {
-		return isPresent(locator, MAX_TIMEOUT);
+		return isPresent(locator, maxTimeout);
 	}
 
 	@Step
@@ -123,11 +178,73 @@ public final class WebDriverWrapper {
 		return Jsoup.parse(driver.getPageSource(), "", Parser.xmlParser());
 	}
 
+	/**
+	 * Get a snapshot of the current page hierarchy to answer locator queries,
+	 * presence checks and text reads locally. The page source is fetched at most
+	 * once per 'ui.snapshot.max_age' milliseconds, and again after any click,
+	 * sendKeys or scroll issued through this class.
+	 *
+	 * @return {@link PageSnapshot}
+	 */
+	public PageSnapshot snapshot() {
+		synchronized (SNAPSHOTS) {
+			PageSnapshot snapshot = SNAPSHOTS.get(driver);
+			if (snapshot == null || snapshot.getAge() > snapshotMaxAge) {
+				long start = System.currentTimeMillis();
+				snapshot = new PageSnapshot(driver.getPageSource(), CHANNEL == Channel.MOBILE_WEB,
+						driver instanceof AndroidDriver);
+				log.debug("device '{}' ::: page snapshot taken in {} ms", deviceId, System.currentTimeMillis() - start);
+				SNAPSHOTS.put(driver, snapshot);
+			}
+			return snapshot;
+		}
+	}
+
+	/**
+	 * Drop the current snapshot; to call after acting on the app other than
+	 * through this class
+	 */
+	public void invalidateSnapshot() {
+		synchronized (SNAPSHOTS) {
+			SNAPSHOTS.remove(driver);
+		}
+	}
+
+	/**
+	 * Check whether an element is present in the current snapshot, without
+	 * waiting. Locators the snapshot cannot evaluate are looked up through the
+	 * driver.
+	 *
+	 * @param locator {@link By}
+	 * @return {@link Boolean}
+	 */
+	public boolean isPresentInSnapshot(@NonNull By locator) {
+		Boolean present = snapshot().isPresent(locator);
+		return present != null ? present : !driver.findElements(locator).isEmpty();
+	}
+
+	/**
+	 * Read the text of an element from the current snapshot, without waiting.
+	 * Locators the snapshot cannot evaluate are looked up through the driver.
+	 *
+	 * @param locator {@link By}
+	 * @return {@link String} or <code>null</code> if there is no such element
+	 */
+	public String getTextFromSnapshot(@NonNull By locator) {
+		PageSnapshot snapshot = snapshot();
+		if (snapshot.findAll(locator) != null) {
+			return snapshot.getText(locator);
+		}
+		List<WebElement> elements = driver.findElements(locator);
+		return elements.isEmpty() ? null : elements.get(0).getText();
+	}
+
 	@Step
 	public void sendKeys(@NonNull By locator, CharSequence... keys) {
 		try {
 			WebElement elm = findElement(locator);
 			if (elm != null) {
+				invalidateSnapshot();
 				elm.clear();
 				elm.click();
 				elm.sendKeys(keys);
@@ -145,12 +262,24 @@ public final class WebDriverWrapper {
 		}
 	}
 
+	/**
+	 * Start recording a batch of operations to run in a single round trip
+	 *
+	 * @return {@link CommandBatch}
+	 */
+	public CommandBatch batch() {
+		return new CommandBatch(this, driver, deviceId);
+	}
+
 	public <T> T until(@NonNull ExpectedCondition<T> condition) {
-		return until(condition, MAX_TIMEOUT);
+		return until(condition, maxTimeout);
 	}
 
 	@Step
 	public <T> T until(@NonNull ExpectedCondition<T> condition, long timeout) {
+		if (AdaptiveWait.isEnabled()) {
+			return AdaptiveWait.until(driver, condition, timeout);
+		}
 		return new WebDriverWait(driver, timeout).pollingEvery(Duration.ofMillis(500))
 				.ignoreAll(Arrays.asList(StaleElementReferenceException.class, NoSuchElementException.class))
 				.until(condition);
@@ -158,18 +287,13 @@ public final class WebDriverWrapper {
 
 	@Step
 	public File captureScreenshot(@NonNull String name) {
+		Screenshot screenshot = ScreenshotProvider.capture(driver, deviceId);
+		Format format = screenshot.getFormat();
 		File file = new File(getString("ui.screenshots.dir"),
-				String.format("%s_%s.jpg", name, System.currentTimeMillis()));
-		if (file.getParentFile() != null && !file.getParentFile().exists()) {
-			file.getParentFile().mkdirs();
-		}
-		byte[] data = ((TakesScreenshot) driver).getScreenshotAs(OutputType.BYTES);
+				String.format("%s_%s%s", name, System.currentTimeMillis(), format.getExtension()));
 		try {
-			Files.write(data, file);
-			try (InputStream stream = new FileInputStream(file)) {
-				Allure.addAttachment(file.getName(), "image/jpg", stream, ".jpg");
-			}
-		} catch (IOException e) {
+			ArtifactWriter.write(screenshot.getData(), file, format.getType(), format.getExtension()).join();
+		} catch (Exception e) {
 			e.printStackTrace();
 		}
 		log.info("screenshot saved to '{}'", file.getAbsolutePath());
@@ -177,16 +301,21 @@ public final class WebDriverWrapper {
 		return file;
 	}
 
+	/**
+	 * Scroll until an element matching the given locator is present, with at most
+	 * 20 swipes
+	 *
+	 * @param locator   {@link By}
+	 * @param direction {@link ScrollDirection}
+	 * @return {@link WebElement} or <code>null</code> if not found
+	 */
 	public WebElement scrollUntilPresent(@NonNull By locator, ScrollDirection direction) {
-
-		for (int i = 0; i < 21; i++) {
-			try {
-				return until(ExpectedConditions.presenceOfElementLocated(locator), 1);
-			} catch (Exception e) {
-				scroll(direction, 1);
-			}
+		invalidateSnapshot();
+		WebElement elm = ScrollEngine.scrollUntilPresent(driver, locator, direction, MAX_SWIPES);
+		if (elm == null) {
+			log.error("device '{}' ::: unable to find element '{}' after scrolling {}", deviceId, locator, direction);
 		}
-		return null;
+		return elm;
 	}
 
 	public void scroll(@NonNull ScrollDirection direction) {
@@ -194,70 +323,113 @@ public final class WebDriverWrapper {
 	}
 
 	public void scroll(@NonNull ScrollDirection direction, int times) {
-
 		if (times < 1) {
 			times = 1;
 		}
+		log.debug("device '{}' ::: scrolling {} by {} pixels {} {}", deviceId, direction, ScrollEngine.SWIPE_LENGTH,
+				times, times < 2 ? "time" : "times");
+		invalidateSnapshot();
+		ScrollEngine.scroll(driver, direction, times);
+	}
 
-		Dimension dimension = driver.manage().window().getSize();
+	public void waitUntilPresent(By locator) {
+		waitUntilPresent(locator, maxTimeout);
+	}
 
-		int offset = 500;
-		int startX = 0;
-		int startY = 0;
-		int endX = 0;
-		int endY = 0;
+	public void waitUntilPresent(By locator, long timeout) {
+		until(ExpectedConditions.presenceOfElementLocated(locator), timeout);
+	}
 
-		log.debug("device '{}' ::: scrolling {} by {} pixels {} {}", deviceId, direction, offset,
-				times, times < 2 ? "time" : "times");
+	public boolean waitForStableScreen() {
+		return waitForStableScreen(ScreenStability.getMaxWait());
+	}
 
-		switch (direction) {
-		case UP:
-			startX = (int) (dimension.getWidth() * 0.5);
-			startY = (int) (dimension.getHeight() * 0.5);
-			endX = (int) (dimension.getWidth() * 0.5);
-			endY = (int) (dimension.getHeight() * 0.5);
-			break;
-		case DOWN:
-			startX = (int) (dimension.getWidth() * 0.5);
-			startY = (int) (dimension.getHeight() * 0.5);
-			endX = (int) (dimension.getWidth() * 0.5);
-			endY = startY + offset;
-			break;
-		case LEFT:
-			startX = (int) (dimension.getWidth() * 0.5);
-			startY = (int) (dimension.getHeight() * 0.5);
-			endX = startX - offset;
-			endY = (int) (dimension.getHeight() * 0.5);
-			break;
-		case RIGHT:
-			startX = (int) (dimension.getWidth() * 0.5);
-			startY = (int) (dimension.getHeight() * 0.5);
-			endX = startX + offset;
-			endY = (int) (dimension.getHeight() * 0.5);
-			break;
-		}
+	/**
+	 * Wait until the screen stops changing, e.g. at the end of an animation,
+	 * instead of sleeping a fixed time
+	 *
+	 * @param maxSeconds {@link Long} - maximum wait
+	 * @return {@link Boolean} - <code>false</code> if the screen was still
+	 *         changing after the maximum wait
+	 */
+	@Step
+	public boolean waitForStableScreen(long maxSeconds) {
+		boolean stable = ScreenStability.await(driver, deviceId, maxSeconds);
+		invalidateSnapshot();
+		return stable;
+	}
 
-		for (int i = 0; i < times; i++) {
-			if (CHANNEL == Channel.MOBILE_WEB) {
-				((JavascriptExecutor) driver).executeScript("window.scrollTo(arguments[0],arguments[1])", endX, endY);
-			} else {
-				io.appium.java_client.TouchAction<?> actions = new io.appium.java_client.TouchAction<>(
-						(AppiumDriver<?>) driver);
-				actions.press(PointOption.point(startX, startY))
-						.waitAction(WaitOptions.waitOptions(Duration.ofMillis(100)))
-						.moveTo(PointOption.point(endX, endY))
-						.release().perform();
-			}
+	public List<By> waitForAny(@NonNull By... locators) {
+		return waitForAny(maxTimeout, locators);
+	}
 
-		}
+	/**
+	 * Wait until at least one of the given locators matches an element. Every
+	 * poll answers all the locators from a single page source fetch.
+	 *
+	 * @param timeout  {@link Long} - in seconds
+	 * @param locators {@link By}
+	 * @return {@link List}&lt;{@link By}&gt; - the locators matching at the last
+	 *         poll, empty if none matched in time
+	 */
+	@Step
+	public List<By> waitForAny(long timeout, @NonNull By... locators) {
+		return waitFor(false, timeout, locators);
 	}
 
-	public void waitUntilPresent(By locator) {
-		waitUntilPresent(locator, MAX_TIMEOUT);
+	public List<By> waitForAll(@NonNull By... locators) {
+		return waitForAll(maxTimeout, locators);
 	}
 
-	public void waitUntilPresent(By locator, long timeout) {
-		until(ExpectedConditions.presenceOfElementLocated(locator), timeout);
+	/**
+	 * Wait until all the given locators match an element. Every poll answers all
+	 * the locators from a single page source fetch.
+	 *
+	 * @param timeout  {@link Long} - in seconds
+	 * @param locators {@link By}
+	 * @return {@link List}&lt;{@link By}&gt; - the locators matching at the last
+	 *         poll, all of them unless the timeout expired
+	 */
+	@Step
+	public List<By> waitForAll(long timeout, @NonNull By... locators) {
+		return waitFor(true, timeout, locators);
+	}
+
+	private List<By> waitFor(boolean all, long timeout, By... locators) {
+		List<By> expected = Arrays.asList(locators);
+		AtomicReference<List<By>> lastMatch = new AtomicReference<>(Collections.emptyList());
+		ExpectedCondition<List<By>> condition = new ExpectedCondition<List<By>>() {
+
+			@Override
+			public List<By> apply(WebDriver input) {
+				invalidateSnapshot();
+				PageSnapshot snapshot = snapshot();
+				List<By> matched = new ArrayList<>();
+				for (By locator : expected) {
+					Boolean present = snapshot.isPresent(locator);
+					if (present == null) {
+						present = !driver.findElements(locator).isEmpty();
+					}
+					if (present) {
+						matched.add(locator);
+					}
+				}
+				lastMatch.set(matched);
+				return matched.isEmpty() || all && matched.size() < expected.size() ? null : matched;
+			}
+
+			@Override
+			public String toString() {
+				return String.format("%s of %s", all ? "all" : "any", expected);
+			}
+		};
+		try {
+			return until(condition, timeout);
+		} catch (TimeoutException e) {
+			log.error("device '{}' ::: {} of {} not present after {} seconds, matched {}", deviceId,
+					all ? "all" : "any", expected, timeout, lastMatch.get());
+			return lastMatch.get();
+		}
 	}
 
 }
\ No newline at end of file
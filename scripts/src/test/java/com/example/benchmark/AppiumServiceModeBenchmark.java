@@ -0,0 +1,98 @@
+package com.example.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import org.openqa.selenium.WebDriver;
+
+import com.example.utils.CommandLineExecutor;
+import com.example.utils.CommandLineResponse;
+import com.example.utils.CommonUtilities;
+import com.example.utils.ConfigManager;
+import com.example.utils.device.Device;
+import com.example.utils.webdriver.ADBUtilities;
+import com.example.utils.webdriver.AppiumServiceFactory;
+import com.example.utils.webdriver.IOSUtilities;
+import com.example.utils.webdriver.WebDriverFactory;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Opens one session on every connected device in parallel with the configured
+ * 'appium.service.mode' and reports session creation throughput and the
+ * resident memory of the Appium (node) processes. Run it once per mode, e.g.
+ * through the 'compareAppiumServiceModes' gradle task, to compare the
+ * per-device layout with the shared one.
+ */
+@Slf4j
+public final class AppiumServiceModeBenchmark {
+
+	private AppiumServiceModeBenchmark() {
+	}
+
+	public static void main(String[] args) {
+
+		String mode = ConfigManager.getString("appium.service.mode", "per_session");
+		List<String> devices = new ArrayList<>(ADBUtilities.getConnectedDevices().keySet());
+		devices.addAll(IOSUtilities.getConnectedDevices().keySet());
+		if (devices.isEmpty()) {
+			throw new RuntimeException("please connect android or ios phones to run the benchmark");
+		}
+
+		Map<String, WebDriver> drivers = new ConcurrentHashMap<>();
+		Map<String, Long> sessionTimes = new ConcurrentHashMap<>();
+		ExecutorService executor = Executors.newFixedThreadPool(devices.size());
+
+		long start = System.currentTimeMillis();
+		AppiumServiceFactory.prestartAppiumServices(devices.stream()
+				.map(id -> ADBUtilities.getConnectedDevices().containsKey(id) ? Device.android(id) : Device.ios(id))
+				.collect(Collectors.toList()));
+		CompletableFuture.allOf(devices.stream().map(id -> CompletableFuture.runAsync(() -> {
+			long sessionStart = System.currentTimeMillis();
+			WebDriver driver = WebDriverFactory.create(id);
+			if (driver == null) {
+				log.error("device '{}' ::: no session created, left out of the results", id);
+				return;
+			}
+			drivers.put(id, driver);
+			sessionTimes.put(id, System.currentTimeMillis() - sessionStart);
+		}, executor)).toArray(CompletableFuture[]::new)).join();
+		long wallTime = System.currentTimeMillis() - start;
+		long rss = getAppiumResidentMemoryInKb();
+
+		drivers.forEach((id, driver) -> {
+			driver.quit();
+			AppiumServiceFactory.stopLocalAppiumService(id);
+		});
+		AppiumServiceFactory.shutdownAllAppiumServices();
+		executor.shutdown();
+
+		double average = sessionTimes.values().stream().mapToLong(Long::longValue).average().orElse(0);
+		log.info(String.format(
+				"mode=%s devices=%d sessions=%d wall=%d ms avg session=%.0f ms throughput=%.2f sessions/min appium rss=%.1f MB",
+				mode, devices.size(), drivers.size(), wallTime, average,
+				wallTime == 0 ? 0 : drivers.size() * 60000.0 / wallTime, rss / 1024.0));
+	}
+
+	/**
+	 * Sum the resident memory of the node processes running Appium; matching the
+	 * command line alone would also count this JVM, whose classpath contains the
+	 * appium java client
+	 */
+	private static long getAppiumResidentMemoryInKb() {
+		CommandLineResponse response = CommandLineExecutor.exec("ps -eo rss=,comm=,args=");
+		if (response == null || CommonUtilities.isBlank(response.getStdOut())) {
+			return 0;
+		}
+		return CommonUtilities.splitLines(response.getStdOut()).stream().map(String::trim)
+				.map(line -> line.split("\\s+", 3)).filter(columns -> columns.length == 3)
+				.filter(columns -> columns[1].equals("node") && columns[2].toLowerCase().contains("appium"))
+				.mapToLong(columns -> Long.parseLong(columns[0])).sum();
+	}
+}
@@ -0,0 +1,112 @@
+package com.example.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.utils.CommonUtilities;
+import com.example.utils.ConfigManager;
+import com.example.utils.ConfigSnapshot;
+
+/**
+ * Cost of one configuration lookup through {@link ConfigManager}, backed by a
+ * {@link ConfigSnapshot}, against the resolution it replaces (environment,
+ * system properties and file properties queried and the value parsed on every
+ * call, reproduced here as the baseline). Run with
+ * <code>gradle benchmarkConfigLookups</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigLookupBenchmark {
+
+	private static final String STRING_KEY = "ui.channel";
+	private static final String INT_KEY = "ui.timeout";
+	private static final String BOOLEAN_KEY = "ui.wait.adaptive";
+
+	private final Properties props = new Properties();
+	private String env;
+
+	@Setup
+	public void setUp() throws IOException {
+		for (String file : new String[] { "default.properties", "config.properties" }) {
+			try (InputStream stream = getClass().getClassLoader().getResourceAsStream(file)) {
+				if (stream != null) {
+					props.load(stream);
+				}
+			}
+		}
+		env = legacyGetString("env", null);
+		// build the snapshot outside of the measurements
+		ConfigManager.getSnapshot();
+	}
+
+	@Benchmark
+	public String legacyGetString() {
+		return legacyGetString(STRING_KEY, null);
+	}
+
+	@Benchmark
+	public int legacyGetInt() {
+		try {
+			return Integer.parseInt(legacyGetString(INT_KEY, String.valueOf(0)));
+		} catch (Exception e) {
+			return 0;
+		}
+	}
+
+	@Benchmark
+	public boolean legacyGetBoolean() {
+		return Boolean.parseBoolean(legacyGetString(BOOLEAN_KEY, String.valueOf(false)));
+	}
+
+	@Benchmark
+	public String snapshotGetString() {
+		return ConfigManager.getString(STRING_KEY);
+	}
+
+	@Benchmark
+	public int snapshotGetInt() {
+		return ConfigManager.getInt(INT_KEY);
+	}
+
+	@Benchmark
+	public boolean snapshotGetBoolean() {
+		return ConfigManager.getBoolean(BOOLEAN_KEY);
+	}
+
+	private String legacyGetString(String propertyKey, String defaultValue) {
+		String key = propertyKey.trim();
+		String keyWithEnv = String.format("%s.%s", env, key);
+		String value = null;
+		if (!CommonUtilities.isBlank(env)) {
+			value = System.getenv(keyWithEnv);
+			if (value != null) {
+				return value.trim();
+			}
+		}
+		value = System.getenv(key);
+		if (value != null) {
+			return value.trim();
+		}
+		if (!CommonUtilities.isBlank(env)) {
+			value = System.getProperty(keyWithEnv, props.getProperty(keyWithEnv));
+		}
+		return CommonUtilities.isBlank(value) ? System.getProperty(key, props.getProperty(key, defaultValue)) : value;
+	}
+}
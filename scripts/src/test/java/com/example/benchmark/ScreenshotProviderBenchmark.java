@@ -0,0 +1,78 @@
+package com.example.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openqa.selenium.WebDriver;
+
+import com.example.utils.ConfigManager;
+import com.example.utils.webdriver.ADBUtilities;
+import com.example.utils.webdriver.AppiumServiceFactory;
+import com.example.utils.webdriver.ScreenshotProvider;
+import com.example.utils.webdriver.ScreenshotProvider.Format;
+import com.example.utils.webdriver.ScreenshotProvider.Screenshot;
+import com.example.utils.webdriver.ScreenshotProvider.Source;
+import com.example.utils.webdriver.WebDriverFactory;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Opens a session on the first connected android device and captures
+ * 'benchmark.iterations' screenshots with every {@link Source} and
+ * {@link Format} combination, reporting the time the calling thread is
+ * blocked, the time until the encoded image is ready, the bytes sent to the
+ * test process and the size of the encoded image.
+ */
+@Slf4j
+public final class ScreenshotProviderBenchmark {
+
+	private static final int WARMUP = 2;
+
+	private ScreenshotProviderBenchmark() {
+	}
+
+	public static void main(String[] args) {
+
+		int iterations = Math.max(1, ConfigManager.getInt("benchmark.iterations", 10));
+		List<String> devices = new ArrayList<>(ADBUtilities.getConnectedDevices().keySet());
+		if (devices.isEmpty()) {
+			throw new RuntimeException("please connect an android phone to run the benchmark");
+		}
+		String deviceId = devices.get(0);
+		WebDriver driver = WebDriverFactory.create(deviceId, true);
+		try {
+			for (Source source : Source.values()) {
+				for (Format format : Format.values()) {
+					run(driver, deviceId, source, format, iterations);
+				}
+			}
+		} finally {
+			driver.quit();
+			AppiumServiceFactory.stopLocalAppiumService(deviceId);
+			AppiumServiceFactory.shutdownAllAppiumServices();
+		}
+	}
+
+	private static void run(WebDriver driver, String deviceId, Source source, Format format, int iterations) {
+		long captureTime = 0;
+		long totalTime = 0;
+		long transferred = 0;
+		long encoded = 0;
+		for (int i = 0; i < WARMUP + iterations; i++) {
+			long start = System.nanoTime();
+			Screenshot screenshot = ScreenshotProvider.capture(source, format, driver, deviceId);
+			byte[] data = screenshot.getData().join();
+			long elapsed = System.nanoTime() - start;
+			if (i >= WARMUP) {
+				captureTime += screenshot.getCaptureTime();
+				totalTime += elapsed / 1_000_000;
+				transferred += screenshot.getTransferredBytes();
+				encoded += data.length;
+			}
+		}
+		log.info(String.format(
+				"source=%-6s format=%-4s iterations=%d avg blocked=%d ms avg ready=%d ms avg transferred=%.1f KB avg size=%.1f KB",
+				source, format, iterations, captureTime / iterations, totalTime / iterations,
+				transferred / 1024.0 / iterations, encoded / 1024.0 / iterations));
+	}
+}
@@ -0,0 +1,46 @@
+package com.example.utils;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+public class CommandLineExecutorTest {
+
+	@Test
+	public void returnsOutputErrorAndExitCode() {
+		CommandLineResponse response = CommandLineExecutor.exec("yes a | head -c 1000000; echo oops >&2; exit 3");
+		assertEquals(response.getStdOut().length(), 999999);
+		assertEquals(response.getErrOut(), "oops");
+		assertEquals(response.getExitCode(), 3);
+	}
+
+	@Test
+	public void doesNotWaitForChildrenHoldingThePipes() {
+		long start = System.currentTimeMillis();
+		List<String> children = new ArrayList<>();
+		// more than 'command.max_concurrent_processes', each leaving a child behind
+		for (int i = 0; i < 20; i++) {
+			CommandLineResponse response = CommandLineExecutor.execCommand(5, TimeUnit.SECONDS, "sh", "-c",
+					"sleep 30 & echo $!");
+			assertNotNull(response);
+			children.add(response.getStdOut());
+		}
+		CommandLineExecutor.exec("kill " + String.join(" ", children));
+		assertTrue(System.currentTimeMillis() - start < 5000, "children held the permits");
+	}
+
+	@Test
+	public void givesUpAfterTheTimeout() {
+		long start = System.currentTimeMillis();
+		assertNull(CommandLineExecutor.execCommand(1, TimeUnit.SECONDS, "sh", "-c", "echo started; sleep 10"));
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertEquals(CommandLineExecutor.exec("echo ok").getStdOut(), "ok");
+	}
+}
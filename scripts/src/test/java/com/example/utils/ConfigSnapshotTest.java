@@ -0,0 +1,138 @@
+package com.example.utils;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.testng.annotations.Test;
+
+/**
+ * Pins the precedence {@link ConfigManager} has always applied, highest first:
+ * environment variable &lt;env&gt;.&lt;key&gt;, environment variable
+ * &lt;key&gt;, system property then file property &lt;env&gt;.&lt;key&gt;
+ * unless blank, system property then file property &lt;key&gt;.
+ */
+public class ConfigSnapshotTest {
+
+	private static Map<String, String> env(String... entries) {
+		Map<String, String> map = new HashMap<>();
+		for (int i = 0; i < entries.length; i += 2) {
+			map.put(entries[i], entries[i + 1]);
+		}
+		return map;
+	}
+
+	private static Properties props(String... entries) {
+		Properties props = new Properties();
+		for (int i = 0; i < entries.length; i += 2) {
+			props.setProperty(entries[i], entries[i + 1]);
+		}
+		return props;
+	}
+
+	@Test
+	public void prefersTheEnvironmentVariableWithTheEnvPrefix() {
+		ConfigSnapshot snapshot = ConfigSnapshot.of(env("env", "qa", "qa.key", "env-qa", "key", "env"),
+				props("qa.key", "sys-qa", "key", "sys"), props("qa.key", "file-qa", "key", "file"));
+		assertEquals(snapshot.getEnv(), "qa");
+		assertEquals(snapshot.getString("key", null), "env-qa");
+	}
+
+	@Test
+	public void prefersTheEnvironmentVariableOverProperties() {
+		ConfigSnapshot snapshot = ConfigSnapshot.of(env("env", "qa", "key", " env "),
+				props("qa.key", "sys-qa", "key", "sys"), props("qa.key", "file-qa", "key", "file"));
+		// environment values are trimmed
+		assertEquals(snapshot.getString("key", null), "env");
+	}
+
+	@Test
+	public void prefersPropertiesWithTheEnvPrefixOverPlainOnes() {
+		ConfigSnapshot snapshot = ConfigSnapshot.of(env(), props("env", "qa", "qa.key", "sys-qa", "key", "sys"),
+				props("qa.key", "file-qa", "key", "file"));
+		assertEquals(snapshot.getString("key", null), "sys-qa");
+
+		// even a file property with the prefix wins over a plain system property
+		snapshot = ConfigSnapshot.of(env(), props("env", "qa", "key", "sys"), props("qa.key", "file-qa"));
+		assertEquals(snapshot.getString("key", null), "file-qa");
+	}
+
+	@Test
+	public void ignoresBlankValuesWithTheEnvPrefix() {
+		ConfigSnapshot snapshot = ConfigSnapshot.of(env(), props("env", "qa", "qa.key", " ", "key", "sys"),
+				props("key", "file"));
+		assertEquals(snapshot.getString("key", null), "sys");
+
+		snapshot = ConfigSnapshot.of(env(), props("env", "qa"), props("qa.key", "", "key", "file"));
+		assertEquals(snapshot.getString("key", null), "file");
+
+		snapshot = ConfigSnapshot.of(env(), props("env", "qa"), props("qa.key", ""));
+		assertFalse(snapshot.contains("key"));
+		assertEquals(snapshot.getString("key", "default"), "default");
+	}
+
+	@Test
+	public void prefersSystemPropertiesOverFileProperties() {
+		ConfigSnapshot snapshot = ConfigSnapshot.of(env(), props("key", "sys"), props("key", "file", "other", "1"));
+		assertNull(snapshot.getEnv());
+		assertEquals(snapshot.getString("key", null), "sys");
+		assertEquals(snapshot.getString("other", null), "1");
+	}
+
+	@Test
+	public void ignoresEnvPrefixedKeysOfOtherEnvs() {
+		ConfigSnapshot snapshot = ConfigSnapshot.of(env(), props(), props("qa.key", "file-qa", "key", "file"));
+		assertEquals(snapshot.getString("key", null), "file");
+
+		snapshot = ConfigSnapshot.of(env(), props(), props("env", "prod", "qa.key", "file-qa", "key", "file"));
+		assertEquals(snapshot.getEnv(), "prod");
+		assertEquals(snapshot.getString("key", null), "file");
+	}
+
+	@Test
+	public void answersPlainLookupsWithEnvPrefixedKeysOnly() {
+		ConfigSnapshot snapshot = ConfigSnapshot.of(env("env", "qa"), props(), props("qa.only", "42"));
+		assertTrue(snapshot.contains("only"));
+		assertEquals(snapshot.getInt("only", 0), 42);
+	}
+
+	@Test
+	public void trimsLookupKeys() {
+		ConfigSnapshot snapshot = ConfigSnapshot.of(env(), props(), props("key", "value"));
+		assertEquals(snapshot.getString(" key ", null), "value");
+	}
+
+	@Test
+	public void returnsTheDefaultWhenUnset() {
+		ConfigSnapshot snapshot = ConfigSnapshot.of(Collections.emptyMap(), props(), props());
+		assertNull(snapshot.getString("missing", null));
+		assertEquals(snapshot.getString("missing", "default"), "default");
+		assertEquals(snapshot.getInt("missing", 7), 7);
+		assertEquals(snapshot.getLong("missing", 7L), 7L);
+		assertEquals(snapshot.getFloat("missing", 1.5f), 1.5f);
+		assertEquals(snapshot.getDouble("missing", 2.5), 2.5);
+		assertTrue(snapshot.getBoolean("missing", true));
+	}
+
+	@Test
+	public void returnsZeroForUnparsableNumbers() {
+		ConfigSnapshot snapshot = ConfigSnapshot.of(env(), props(),
+				props("text", "abc", "decimal", "1.5", "blank", "", "flag", "yes"));
+		assertEquals(snapshot.getInt("text", 7), 0);
+		assertEquals(snapshot.getLong("text", 7L), 0L);
+		assertEquals(snapshot.getFloat("text", 1.5f), 0f);
+		assertEquals(snapshot.getDouble("text", 2.5), 0.0);
+		assertEquals(snapshot.getInt("decimal", 7), 0);
+		assertEquals(snapshot.getFloat("decimal", 7f), 1.5f);
+		// a blank value is set, not missing
+		assertEquals(snapshot.getInt("blank", 7), 0);
+		assertEquals(snapshot.getString("blank", "default"), "");
+		assertFalse(snapshot.getBoolean("flag", true));
+	}
+}
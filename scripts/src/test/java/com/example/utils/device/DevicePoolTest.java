@@ -0,0 +1,78 @@
+package com.example.utils.device;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+public class DevicePoolTest {
+
+	private static Device device(String id) {
+		return new Device(id, true, "Pixel", "11", false);
+	}
+
+	@Test
+	public void leasesEachDeviceOnce() {
+		DevicePool pool = new DevicePool();
+		pool.add(device("a"));
+		assertEquals(pool.tryLease(DeviceCriteria.ANY).getId(), "a");
+		assertNull(pool.tryLease(DeviceCriteria.ANY));
+		pool.release("a");
+		assertEquals(pool.tryLease(DeviceCriteria.ANY).getId(), "a");
+	}
+
+	@Test
+	public void keepsALeasedDeviceComingBackOnlineUntilReleased() {
+		DevicePool pool = new DevicePool();
+		Device device = device("a");
+		pool.add(device);
+		assertSame(pool.tryLease(DeviceCriteria.ANY), device);
+
+		// offline while leased, then back online
+		assertTrue(pool.retire("a"));
+		assertFalse(pool.contains("a"));
+		assertTrue(pool.add(device("a")));
+		assertTrue(pool.contains("a"));
+		assertTrue(pool.isLeased("a"));
+		assertNull(pool.tryLease(DeviceCriteria.ANY), "a device still in use must not be leased again");
+
+		pool.release("a");
+		assertFalse(pool.isLeased("a"));
+		assertEquals(pool.tryLease(DeviceCriteria.ANY).getId(), "a");
+		assertNull(pool.tryLease(DeviceCriteria.ANY), "a released device must be available only once");
+	}
+
+	@Test
+	public void dropsADeviceRetiredWhileLeased() {
+		DevicePool pool = new DevicePool();
+		pool.add(device("a"));
+		pool.tryLease(DeviceCriteria.ANY);
+		pool.retire("a");
+		pool.release("a");
+		assertFalse(pool.contains("a"));
+		assertNull(pool.tryLease(DeviceCriteria.ANY));
+	}
+
+	@Test
+	public void wakesUpWaitingThreadsOnRelease() throws Exception {
+		DevicePool pool = new DevicePool();
+		pool.add(device("a"));
+		pool.tryLease(DeviceCriteria.ANY);
+		Thread releaser = new Thread(() -> {
+			try {
+				TimeUnit.MILLISECONDS.sleep(100);
+			} catch (InterruptedException e) {
+				return;
+			}
+			pool.release("a");
+		});
+		releaser.start();
+		assertEquals(pool.lease(DeviceCriteria.ANY, 5, TimeUnit.SECONDS).getId(), "a");
+		releaser.join();
+	}
+}
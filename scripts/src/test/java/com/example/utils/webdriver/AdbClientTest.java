@@ -0,0 +1,285 @@
+package com.example.utils.webdriver;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.example.utils.CommandLineResponse;
+
+/**
+ * Runs {@link AdbClient} against an in-process fake adb server serving one
+ * device, 'emulator-5554': <code>shell:</code> and <code>exec:</code> run the
+ * command with the local sh, and <code>sync:</code> keeps the pushed files in
+ * memory.
+ */
+public class AdbClientTest {
+
+	private static final String SERIAL = "emulator-5554";
+	private static final String DEVICES = SERIAL + "          device product:sdk model:Android_SDK transport_id:1\n";
+
+	private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+	private ServerSocket server;
+	private AdbClient client;
+
+	@BeforeClass
+	public void setUp() throws IOException {
+		server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		Thread acceptor = new Thread(() -> {
+			while (!server.isClosed()) {
+				try {
+					Socket socket = server.accept();
+					Thread handler = new Thread(() -> serve(socket), "fake-adb-connection");
+					handler.setDaemon(true);
+					handler.start();
+				} catch (IOException e) {
+					// closed
+				}
+			}
+		}, "fake-adb-server");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		client = new AdbClient("127.0.0.1", server.getLocalPort());
+	}
+
+	@AfterClass(alwaysRun = true)
+	public void tearDown() throws IOException {
+		server.close();
+	}
+
+	@Test
+	public void listsDevices() throws IOException {
+		assertTrue(client.isServerRunning());
+		assertEquals(client.getDevices(), Collections.singletonList(DEVICES.trim()));
+	}
+
+	@Test
+	public void runsShellCommandsWithTheirExitCode() throws IOException {
+		CommandLineResponse response = client.shell(SERIAL, "echo hello; echo world");
+		assertEquals(response.getStdOut(), "hello\nworld");
+		assertEquals(response.getExitCode(), 0);
+
+		response = client.shell(null, "sh -c 'echo oops >&2; exit 4'");
+		assertEquals(response.getStdOut(), "oops");
+		assertEquals(response.getExitCode(), 4);
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void throwsWhenTheDeviceIsNotReachable() throws IOException {
+		// the command was not sent, so the caller can fall back to another path
+		client.shell("unknown-device", "echo hello");
+	}
+
+	@Test
+	public void reportsFailuresAfterTheCommandIsSent() throws IOException {
+		// the command may have run, so it must not be thrown for the caller to retry
+		CommandLineResponse response = client.shell(SERIAL, "drop-connection");
+		assertEquals(response.getExitCode(), -1);
+		response = client.shell(SERIAL, "reject-command");
+		assertEquals(response.getExitCode(), -1);
+		assertTrue(response.getErrOut().contains("rejected"), response.getErrOut());
+	}
+
+	@Test
+	public void readsBinaryOutputOfExec() throws IOException {
+		byte[] output = client.execOut(SERIAL, "printf '\\001\\002\\r\\n\\003'");
+		assertEquals(output, new byte[] { 1, 2, '\r', '\n', 3 });
+		try (InputStream stream = client.openExecOut(SERIAL, "printf abc")) {
+			assertEquals(readAll(stream), "abc".getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	public void pushesAndPullsFilesThroughSync() throws IOException {
+		// larger than one sync chunk
+		byte[] content = new byte[150 * 1024];
+		new Random(5554).nextBytes(content);
+		File local = File.createTempFile("adb-client", ".bin");
+		File pulled = new File(local.getPath() + ".pulled");
+		try {
+			Files.write(local.toPath(), content);
+			client.push(SERIAL, local, "/sdcard/file.bin", 0644);
+			assertEquals(files.get("/sdcard/file.bin"), content);
+
+			client.pull(SERIAL, "/sdcard/file.bin", pulled);
+			assertEquals(Files.readAllBytes(pulled.toPath()), content);
+		} finally {
+			local.delete();
+			pulled.delete();
+		}
+	}
+
+	@Test(expectedExceptions = IOException.class)
+	public void failsToPullMissingFiles() throws IOException {
+		File pulled = File.createTempFile("adb-client", ".missing");
+		try {
+			client.pull(SERIAL, "/sdcard/missing.bin", pulled);
+		} finally {
+			pulled.delete();
+		}
+	}
+
+	private void serve(Socket socket) {
+		try (Socket _socket = socket) {
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			OutputStream out = socket.getOutputStream();
+			while (true) {
+				String request = readString(in, Integer.parseInt(readString(in, 4), 16));
+				if (request.equals("host:version")) {
+					okay(out, "0029");
+					return;
+				} else if (request.equals("host:devices-l")) {
+					okay(out, "");
+					out.write(lengthPrefixed(DEVICES));
+					return;
+				} else if (request.equals("host:transport-any") || request.equals("host:transport:" + SERIAL)) {
+					okay(out, "");
+				} else if (request.startsWith("host:transport:")) {
+					fail(out, "device '" + request.substring(15) + "' not found");
+					return;
+				} else if (request.startsWith("shell:")) {
+					String command = request.substring(6);
+					if (command.contains("drop-connection")) {
+						return;
+					}
+					if (command.contains("reject-command")) {
+						fail(out, "command rejected");
+						return;
+					}
+					okay(out, "");
+					out.write(run(command));
+					return;
+				} else if (request.startsWith("exec:")) {
+					okay(out, "");
+					out.write(run(request.substring(5)));
+					return;
+				} else if (request.equals("sync:")) {
+					okay(out, "");
+					sync(in, out);
+					return;
+				} else {
+					fail(out, "unknown request " + request);
+					return;
+				}
+			}
+		} catch (IOException e) {
+			// client went away
+		}
+	}
+
+	private void sync(DataInputStream in, OutputStream out) throws IOException {
+		while (true) {
+			String id = readString(in, 4);
+			String payload = readString(in, readIntLE(in));
+			if (id.equals("SEND")) {
+				String path = payload.substring(0, payload.lastIndexOf(','));
+				ByteArrayOutputStream content = new ByteArrayOutputStream();
+				while (true) {
+					String chunk = readString(in, 4);
+					int length = readIntLE(in);
+					if (chunk.equals("DONE")) {
+						break;
+					}
+					byte[] data = new byte[length];
+					in.readFully(data);
+					content.write(data);
+				}
+				files.put(path, content.toByteArray());
+				out.write(header("OKAY", 0));
+			} else if (id.equals("RECV")) {
+				byte[] content = files.get(payload);
+				if (content == null) {
+					out.write(header("FAIL", 14));
+					out.write("No such file\r\n".getBytes(StandardCharsets.US_ASCII));
+				} else {
+					for (int offset = 0; offset < content.length; offset += 64 * 1024) {
+						int length = Math.min(64 * 1024, content.length - offset);
+						out.write(header("DATA", length));
+						out.write(content, offset, length);
+					}
+					out.write(header("DONE", 0));
+				}
+			} else {
+				return;
+			}
+			out.flush();
+		}
+	}
+
+	private static byte[] run(String command) throws IOException {
+		Process process = new ProcessBuilder(Arrays.asList("sh", "-c", command)).redirectErrorStream(true).start();
+		byte[] output = readAll(process.getInputStream());
+		try {
+			process.waitFor();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return output;
+	}
+
+	private static void okay(OutputStream out, String data) throws IOException {
+		out.write(("OKAY" + data).getBytes(StandardCharsets.US_ASCII));
+		out.flush();
+	}
+
+	private static void fail(OutputStream out, String message) throws IOException {
+		out.write("FAIL".getBytes(StandardCharsets.US_ASCII));
+		out.write(lengthPrefixed(message));
+		out.flush();
+	}
+
+	private static byte[] lengthPrefixed(String str) {
+		byte[] data = str.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = ByteBuffer.allocate(4 + data.length);
+		buffer.put(String.format("%04x", data.length).getBytes(StandardCharsets.US_ASCII)).put(data);
+		return buffer.array();
+	}
+
+	private static byte[] header(String id, int value) {
+		return ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).put(id.getBytes(StandardCharsets.US_ASCII))
+				.putInt(value).array();
+	}
+
+	private static String readString(DataInputStream in, int length) throws IOException {
+		byte[] data = new byte[length];
+		in.readFully(data);
+		return new String(data, StandardCharsets.UTF_8);
+	}
+
+	private static int readIntLE(DataInputStream in) throws IOException {
+		byte[] data = new byte[4];
+		in.readFully(data);
+		return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).getInt();
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) > 0) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+}
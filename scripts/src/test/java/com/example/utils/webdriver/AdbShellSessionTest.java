@@ -0,0 +1,103 @@
+package com.example.utils.webdriver;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.example.utils.CommandLineResponse;
+
+/**
+ * Runs {@link AdbShellSession} against a fake adb, a script ignoring
+ * <code>-s &lt;id&gt; shell</code> and running a local shell instead.
+ */
+public class AdbShellSessionTest {
+
+	private File adb;
+	private AdbShellSession session;
+
+	@BeforeClass
+	public void setUp() throws IOException {
+		adb = File.createTempFile("fake-adb", ".sh");
+		Files.write(adb.toPath(), "#!/bin/sh\nexec sh\n".getBytes(StandardCharsets.UTF_8));
+		adb.setExecutable(true);
+		session = new AdbShellSession(adb.getAbsolutePath(), "emulator-5554");
+	}
+
+	@AfterClass(alwaysRun = true)
+	public void tearDown() {
+		session.close();
+		adb.delete();
+	}
+
+	@Test
+	public void returnsOutputAndExitCode() {
+		CommandLineResponse response = session.exec("echo hello");
+		assertEquals(response.getStdOut(), "hello");
+		assertEquals(response.getExitCode(), 0);
+
+		response = session.exec("sh -c 'echo failing; exit 3'");
+		assertEquals(response.getStdOut(), "failing");
+		assertEquals(response.getExitCode(), 3);
+	}
+
+	@Test
+	public void returnsTheErrorTextOfTheCommand() {
+		CommandLineResponse response = session.exec("echo out; ls /no/such/path");
+		assertTrue(response.getStdOut().startsWith("out\n"), response.getStdOut());
+		assertTrue(response.getStdOut().contains("/no/such/path"), response.getStdOut());
+		assertTrue(response.getExitCode() != 0);
+	}
+
+	@Test
+	public void framesOutputWithoutTrailingNewLine() {
+		CommandLineResponse response = session.exec("printf 'first\\nsecond'");
+		assertEquals(response.getStdOut(), "first\nsecond");
+		assertEquals(response.getExitCode(), 0);
+	}
+
+	@Test
+	public void doesNotReadStdinOfTheSession() {
+		// a command reading stdin must not swallow the commands pipelined after it
+		CommandLineResponse response = session.exec("cat");
+		assertEquals(response.getStdOut(), "");
+		assertEquals(session.exec("echo next").getStdOut(), "next");
+	}
+
+	@Test
+	public void completesPipelinedCommandsInOrder() throws Exception {
+		CompletableFuture<CommandLineResponse> first = session.execAsync("sleep 0.2; echo 1");
+		CompletableFuture<CommandLineResponse> second = session.execAsync("echo 2");
+		CompletableFuture<CommandLineResponse> third = session.execAsync("false");
+		assertEquals(first.get(10, TimeUnit.SECONDS).getStdOut(), "1");
+		assertEquals(second.get(10, TimeUnit.SECONDS).getStdOut(), "2");
+		assertEquals(third.get(10, TimeUnit.SECONDS).getExitCode(), 1);
+	}
+
+	@Test
+	public void reportsACommandKillingTheSessionAsFailed() {
+		// the command was sent, so the caller must not run it again elsewhere
+		CommandLineResponse response = session.exec("kill -9 $$");
+		assertNotNull(response);
+		assertEquals(response.getExitCode(), -1);
+		assertEquals(session.exec("echo reconnected").getStdOut(), "reconnected");
+	}
+
+	@Test
+	public void returnsNullWhenTheSessionCannotBeOpened() {
+		AdbShellSession missing = new AdbShellSession(new File(adb.getParentFile(), "missing-adb").getPath(),
+				"emulator-5554");
+		assertNull(missing.exec("echo hello"));
+	}
+}
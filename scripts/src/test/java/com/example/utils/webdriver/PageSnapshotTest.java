@@ -0,0 +1,50 @@
+package com.example.utils.webdriver;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.jsoup.nodes.Element;
+import org.openqa.selenium.By;
+import org.testng.annotations.Test;
+
+import io.appium.java_client.MobileBy;
+
+public class PageSnapshotTest {
+
+	private static final String SOURCE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><hierarchy rotation=\"0\">"
+			+ "<android.widget.FrameLayout class=\"android.widget.FrameLayout\" resource-id=\"com.example:id/root\">"
+			+ "<android.widget.TextView class=\"android.widget.TextView\" resource-id=\"com.example:id/title\" text=\"Title\"/>"
+			+ "<android.widget.Button class=\"android.widget.Button\" content-desc=\"login\" text=\"Log in\"/>"
+			+ "<android.widget.Button class=\"android.widget.Button\" content-desc=\"cancel\" text=\"Cancel\"/>"
+			+ "</android.widget.FrameLayout></hierarchy>";
+
+	@Test
+	public void answersIndexedLocators() {
+		PageSnapshot snapshot = new PageSnapshot(SOURCE, false, true);
+		assertEquals(snapshot.getText(By.id("title")), "Title");
+		assertEquals(snapshot.getText(MobileBy.AccessibilityId("cancel")), "Cancel");
+		assertEquals(snapshot.findAll(By.className("android.widget.Button")).size(), 2);
+		assertNull(snapshot.findAll(By.cssSelector("button")));
+	}
+
+	@Test
+	public void evaluatesXpathWithoutModifyingTheDocument() {
+		PageSnapshot snapshot = new PageSnapshot(SOURCE, false, true);
+		String before = snapshot.getDocument().outerHtml();
+
+		List<Element> found = snapshot.findAll(By.xpath("//android.widget.Button[@text='Log in']"));
+		assertEquals(found.size(), 1);
+		assertEquals(found.get(0).attr("content-desc"), "login");
+		assertEquals(texts(snapshot.findAll(By.xpath("//*[@text]"))), "Title,Log in,Cancel");
+		assertEquals(snapshot.findAll(By.xpath("//hierarchy/@rotation")).size(), 0);
+
+		assertEquals(snapshot.getDocument().outerHtml(), before);
+	}
+
+	private static String texts(List<Element> elements) {
+		return elements.stream().map(element -> element.attr("text")).collect(Collectors.joining(","));
+	}
+}
@@ -0,0 +1,59 @@
+package com.example.utils.webdriver;
+
+import static org.testng.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import org.testng.annotations.Test;
+
+public class ScreenshotProviderTest {
+
+	private static ByteBuffer header(int width, int height, int pixelFormat, boolean colorSpace, int size) {
+		ByteBuffer buffer = ByteBuffer.allocate((colorSpace ? 16 : 12) + size).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(width).putInt(height).putInt(pixelFormat);
+		if (colorSpace) {
+			buffer.putInt(1);
+		}
+		return buffer;
+	}
+
+	@Test
+	public void decodesRgba() {
+		ByteBuffer raw = header(2, 1, 1, true, 8);
+		raw.put(new byte[] { (byte) 0xff, 0x00, 0x00, (byte) 0xff, 0x00, 0x00, (byte) 0xff, (byte) 0xff });
+		BufferedImage image = ScreenshotProvider.decodeRaw(raw.array());
+		assertEquals(image.getRGB(0, 0) & 0xffffff, 0xff0000);
+		assertEquals(image.getRGB(1, 0) & 0xffffff, 0x0000ff);
+	}
+
+	@Test
+	public void decodesBgraWithoutColorSpace() {
+		ByteBuffer raw = header(1, 1, 5, false, 4);
+		raw.put(new byte[] { (byte) 0xff, 0x00, 0x00, (byte) 0xff });
+		assertEquals(ScreenshotProvider.decodeRaw(raw.array()).getRGB(0, 0) & 0xffffff, 0x0000ff);
+	}
+
+	@Test
+	public void decodesRgb565() {
+		ByteBuffer raw = header(3, 1, 4, true, 6);
+		raw.putShort((short) 0xf800).putShort((short) 0x07e0).putShort((short) 0x001f);
+		BufferedImage image = ScreenshotProvider.decodeRaw(raw.array());
+		assertEquals(image.getRGB(0, 0) & 0xffffff, 0xff0000);
+		assertEquals(image.getRGB(1, 0) & 0xffffff, 0x00ff00);
+		assertEquals(image.getRGB(2, 0) & 0xffffff, 0x0000ff);
+	}
+
+	@Test(expectedExceptions = RuntimeException.class)
+	public void rejectsErrorMessages() {
+		ScreenshotProvider.decodeRaw("/system/bin/sh: screencap: inaccessible or not found\n"
+				.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	@Test(expectedExceptions = RuntimeException.class)
+	public void rejectsTruncatedFramebuffers() {
+		ScreenshotProvider.decodeRaw(header(100, 100, 1, true, 16).array());
+	}
+}